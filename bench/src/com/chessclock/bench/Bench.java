@@ -0,0 +1,153 @@
+/*************************************************************************
+ * File: Bench.java
+ *
+ * A small micro-benchmark harness.
+ *
+ * Created: 2026-10-18
+ *
+ * Author: Simen Heggestøyl
+ *
+ *************************************************************************
+ *
+ *   This file is part of Simple Chess Clock (SCC).
+ *
+ *   SCC is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   SCC is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with SCC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *************************************************************************/
+package com.chessclock.bench;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs an operation in timed rounds after a warmup, and reports the time
+ * and the number of bytes allocated per operation. The allocation numbers
+ * come from the JVM's per-thread allocation counter, so operations should
+ * run on the calling thread only.
+ *
+ * Operations that must not allocate are run with runAllocationFree, and
+ * the ones that did allocate are collected for the caller to fail on.
+ */
+public class Bench {
+    /** An operation to measure, returning something to keep it alive. */
+    public interface Op {
+        long run(long i);
+    }
+
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int ROUNDS = 10;
+
+    /** Consumes the results, so the JIT can't optimise the work away. */
+    private static volatile long sink;
+
+    /** Allocation free operations that allocated after all. */
+    private static final List<String> allocating = new ArrayList<String>();
+
+    public static void header(String title) {
+        System.out.println();
+        System.out.println(title);
+        System.out.println(String.format(
+            "%-44s %12s %12s", "Benchmark", "ns/op", "bytes/op"));
+    }
+
+    /**
+     * Measure an operation.
+     * @param name - name to report
+     * @param opsPerRound - how many times to run op per round
+     * @param op - the operation
+     */
+    public static void run(String name, long opsPerRound, Op op) {
+        measure(name, opsPerRound, op);
+    }
+
+    /**
+     * Measure an operation like run, and if it allocated anything, add it
+     * to the allocating operations.
+     */
+    public static void runAllocationFree(String name, long opsPerRound,
+                                         Op op) {
+        if (measure(name, opsPerRound, op) > 0) {
+            allocating.add(name);
+        }
+    }
+
+    /**
+     * Return the names of the allocation free operations that allocated,
+     * in the order they were run.
+     */
+    public static List<String> allocating() {
+        return allocating;
+    }
+
+    /**
+     * Measure and report an operation, and return the number of bytes it
+     * allocated, or -1 if unknown.
+     */
+    private static long measure(String name, long opsPerRound, Op op) {
+        long result = 0;
+        long i = 0;
+
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            for (long n = 0; n < opsPerRound; n++) {
+                result += op.run(i++);
+            }
+        }
+
+        long bestNanos = Long.MAX_VALUE;
+        long before = allocatedBytes();
+        long start;
+
+        for (int round = 0; round < ROUNDS; round++) {
+            start = System.nanoTime();
+            for (long n = 0; n < opsPerRound; n++) {
+                result += op.run(i++);
+            }
+            bestNanos = Math.min(bestNanos, System.nanoTime() - start);
+        }
+
+        // Reading the counter allocates a little of its own
+        long allocated = before < 0
+            ? -1
+            : Math.max(0, allocatedBytes() - before - counterOverhead());
+        sink += result;
+
+        System.out.println(String.format(
+            "%-44s %12.1f %12s", name, (double)bestNanos / opsPerRound,
+            allocated < 0
+                ? "-"
+                : String.format("%.2f", (double)allocated / (ROUNDS * opsPerRound))
+        ));
+        return allocated;
+    }
+
+    /** Return the bytes allocated by reading the allocation counter. */
+    private static long counterOverhead() {
+        long before = allocatedBytes();
+        return allocatedBytes() - before;
+    }
+
+    /** Return bytes allocated by this thread so far, or -1 if unknown. */
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean)threads)
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+
+        return -1;
+    }
+}
@@ -0,0 +1,165 @@
+/*************************************************************************
+ * File: Benchmarks.java
+ *
+ * Benchmarks for the clock core.
+ *
+ * Created: 2026-10-18
+ *
+ * Author: Simen Heggestøyl
+ *
+ *************************************************************************
+ *
+ *   This file is part of Simple Chess Clock (SCC).
+ *
+ *   SCC is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   SCC is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with SCC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *************************************************************************/
+package com.chessclock.bench;
+
+import com.chessclock.core.ClockEngine;
+import com.chessclock.core.DelayType;
+import com.chessclock.core.StandardTimeControl;
+import com.chessclock.core.ThinkTimeStats;
+import com.chessclock.core.TimeFormatter;
+import com.chessclock.core.TimeSource;
+
+/**
+ * Measures the work the app does per clock refresh, per press and per
+ * formatted time, for every delay type, and per move for the think time
+ * statistics. Run with "make bench".
+ */
+public class Benchmarks {
+    private static final long OPS = 1000000;
+
+    /** Plenty of time, so that no flag falls while measuring. */
+    private static final long GAME_TIME = 1000L * 60 * 60 * 1000;
+    private static final long DELAY = 2000;
+
+    /** The real monotonic clock, as on the device. */
+    private static final TimeSource SYSTEM_TIME = new TimeSource() {
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+    };
+
+    /** A clock advancing one millisecond every time it's read. */
+    private static class SteppingTime implements TimeSource {
+        private long now = 0;
+
+        public long nanoTime() {
+            return now += 1000000;
+        }
+    }
+
+    public static void main(String[] args) {
+        Bench.header("Per clock refresh (read time, format, schedule)");
+        for (DelayType type : DelayType.values()) {
+            tick(type);
+        }
+
+        Bench.header("Per press");
+        for (DelayType type : DelayType.values()) {
+            press(type);
+        }
+
+        Bench.header("Formatting");
+        format(true);
+        format(false);
+
+        Bench.header("Think time statistics");
+        thinkTimeStats();
+
+        // Refreshing, pressing, formatting and keeping the think time
+        // statistics run on the UI thread while a clock is running, and must
+        // never make garbage
+        if (!Bench.allocating().isEmpty()) {
+            System.out.println();
+            System.out.println("FAILED, allocating: " + Bench.allocating());
+            System.exit(1);
+        }
+    }
+
+    private static ClockEngine engine(DelayType type, TimeSource time) {
+        ClockEngine engine = new ClockEngine(time);
+        engine.setUp(
+            new StandardTimeControl(type, GAME_TIME, GAME_TIME, DELAY));
+        return engine;
+    }
+
+    private static void tick(DelayType type) {
+        final ClockEngine engine = engine(type, SYSTEM_TIME);
+        final TimeFormatter formatter = new TimeFormatter();
+        final char[] text = new char[TimeFormatter.MAX_LENGTH];
+        engine.press(1);
+
+        Bench.runAllocationFree("tick " + type, OPS, new Bench.Op() {
+            public long run(long i) {
+                long delay = engine.delayNanos();
+                int length = formatter.formatClock(
+                    text, engine.remaining(2), engine.delay());
+                return length + (delay > 0
+                    ? formatter.nanosUntilChange(delay)
+                    : formatter.nanosUntilChange(engine.remainingNanos(2)));
+            }
+        });
+    }
+
+    private static void press(DelayType type) {
+        final ClockEngine engine = engine(type, new SteppingTime());
+
+        Bench.runAllocationFree("press " + type, OPS, new Bench.Op() {
+            public long run(long i) {
+                int player = (int)(i & 1) + 1;
+                // Keep the move log at the size of a long game
+                if ((i & 1023) == 0) {
+                    engine.moveLog().clear();
+                }
+                engine.press(player);
+                return engine.remainingNanos(player);
+            }
+        });
+    }
+
+    private static void thinkTimeStats() {
+        final ThinkTimeStats stats = new ThinkTimeStats();
+
+        Bench.runAllocationFree("add move + read all", OPS, new Bench.Op() {
+            public long run(long i) {
+                int player = (int)(i & 1) + 1;
+                // Games of 150 moves each, mostly past the exact moves
+                if (i % 300 == 0) {
+                    stats.clear();
+                }
+                stats.add(player, (i * 7919) % (60L * 1000 * 1000000));
+                return stats.mean(player) + stats.standardDeviation(player)
+                    + stats.longest(player) + stats.percentile90(player);
+            }
+        });
+    }
+
+    private static void format(boolean showDeciseconds) {
+        final TimeFormatter formatter = new TimeFormatter();
+        final char[] text = new char[TimeFormatter.MAX_LENGTH];
+        formatter.setShowDeciseconds(showDeciseconds);
+
+        Bench.runAllocationFree("format showDeciseconds=" + showDeciseconds,
+                                OPS, new Bench.Op() {
+            public long run(long i) {
+                // Spread the times over all formats, from 0 to 2 hours
+                long time = (i * 7919) % (2 * 60 * 60 * 1000);
+                return formatter.formatClock(text, time, i & 4095);
+            }
+        });
+    }
+}
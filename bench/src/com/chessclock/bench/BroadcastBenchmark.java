@@ -0,0 +1,345 @@
+/*************************************************************************
+ * File: BroadcastBenchmark.java
+ *
+ * Broadcasts a hall of boards over loopback multicast, and measures it.
+ *
+ * Created: 2026-10-18
+ *
+ * Author: Simen Heggestøyl
+ *
+ *************************************************************************
+ *
+ *   This file is part of Simple Chess Clock (SCC).
+ *
+ *   SCC is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   SCC is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with SCC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *************************************************************************/
+package com.chessclock.bench;
+
+import com.chessclock.core.ClockBroadcaster;
+import com.chessclock.core.ClockFrame;
+import com.chessclock.core.ClockReceiver;
+import com.chessclock.core.ClockRegistry;
+import com.chessclock.core.DelayType;
+import com.chessclock.core.StandardTimeControl;
+import com.chessclock.core.TimeSource;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MulticastSocket;
+import java.net.NetworkInterface;
+import java.util.Random;
+
+/**
+ * Plays a hall of boards in real time, each sender (a device) broadcasting
+ * the state of its boards over UDP multicast on the loopback interface,
+ * and one receiver (the arbiter screen) rebuilding them. Reports the frame
+ * and datagram rates, the CPU time spent per frame on both ends, lost
+ * frames, and how far the receiver's clocks are from the real ones.
+ *
+ * Every RESTART_INTERVAL a sender starts over with a new broadcaster, as
+ * when the app restarts, and publishes its boards again. The receiver must
+ * keep following those boards, so a restart costs no frames.
+ *
+ * Run with "make broadcast", optionally giving the number of senders and a
+ * seed: make broadcast SENDERS=200 SEED=1
+ */
+public class BroadcastBenchmark {
+    private static final long MILLI = 1000000;
+    private static final long SECOND = 1000 * MILLI;
+    private static final long DURATION = 10 * SECOND;
+    private static final int BOARDS_PER_SENDER = 4;
+    private static final long RESTART_INTERVAL = 200 * MILLI;
+
+    /** How long a frame may wait for more to batch with. */
+    private static final long BATCH_DELAY = 50 * MILLI;
+
+    private static final String GROUP = "239.255.43.21";
+    private static final int PORT = 43210;
+
+    private static final TimeSource SYSTEM_TIME = new TimeSource() {
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+    };
+
+    public static void main(String[] args) throws Exception {
+        int senders = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 1;
+        final int boards = senders * BOARDS_PER_SENDER;
+
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        InetAddress group = InetAddress.getByName(GROUP);
+        NetworkInterface loopback = NetworkInterface.getByInetAddress(
+            InetAddress.getLoopbackAddress());
+        InetSocketAddress destination = new InetSocketAddress(group, PORT);
+
+        final MulticastSocket in = new MulticastSocket(PORT);
+        in.setReceiveBufferSize(4 << 20);
+        in.setNetworkInterface(loopback);
+        in.joinGroup(destination, loopback);
+
+        final ClockReceiver receiver = new ClockReceiver(SYSTEM_TIME, boards);
+        final long[] receiverCpu = new long[1];
+        Thread receiving = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    while (true) {
+                        receiver.receive(in);
+                    }
+                } catch (IOException e) {
+                    // Closed
+                }
+                receiverCpu[0] = threads.getCurrentThreadCpuTime();
+            }
+        });
+        receiving.start();
+
+        MulticastSocket[] sockets = new MulticastSocket[senders];
+        ClockBroadcaster[] broadcasters = new ClockBroadcaster[senders];
+        for (int s = 0; s < senders; s++) {
+            sockets[s] = new MulticastSocket();
+            sockets[s].setNetworkInterface(loopback);
+            sockets[s].setTimeToLive(1);
+            broadcasters[s] = new ClockBroadcaster(
+                sockets[s], destination, SYSTEM_TIME);
+        }
+
+        Hall hall = new Hall(new Random(seed), boards, broadcasters,
+                             sockets, destination);
+        hall.run(receiver);
+
+        // Let the last datagrams arrive
+        Thread.sleep(200);
+        in.close();
+        receiving.join();
+        for (MulticastSocket socket : sockets) {
+            socket.close();
+        }
+
+        long frames = hall.retiredFrames;
+        long datagrams = hall.retiredDatagrams;
+        for (ClockBroadcaster broadcaster : broadcasters) {
+            frames += broadcaster.framesSent();
+            datagrams += broadcaster.datagramsSent();
+        }
+        double seconds = (double)DURATION / SECOND;
+
+        System.out.println(String.format(
+            "%d senders, %d boards, %.0f s, batching up to %d ms",
+            senders, boards, seconds, BATCH_DELAY / MILLI));
+        System.out.println(String.format(
+            "Sent: %d frames (%.0f/s) in %d datagrams (%.0f/s), "
+            + "%d presses, %d flag falls, %d sender restarts",
+            frames, frames / seconds, datagrams, datagrams / seconds,
+            hall.presses, hall.flags, hall.restarts));
+        System.out.println(String.format(
+            "Received: %d frames, %d lost, %d dropped",
+            receiver.framesReceived(),
+            frames - receiver.framesReceived() - receiver.framesDropped(),
+            receiver.framesDropped()));
+        System.out.println(String.format(
+            "Per frame: %.1f us publishing and sending, "
+            + "%.1f us receiver CPU",
+            hall.sendNanos / 1e3 / Math.max(1, frames),
+            receiverCpu[0] / 1e3 / Math.max(1, receiver.framesReceived())));
+        System.out.println(String.format(
+            "Receiver clock error: mean %.2f ms, max %.2f ms "
+            + "(every 100 ms, boards without frames on the way)",
+            hall.errorSum / 1e6 / Math.max(1, hall.errorSamples),
+            hall.maxError / 1e6));
+    }
+
+    /** The games of all senders, and their broadcasting. */
+    private static class Hall {
+        final Random random;
+        final int boards;
+        final ClockBroadcaster[] broadcasters;
+        final MulticastSocket[] sockets;
+        final InetSocketAddress destination;
+        final ClockRegistry registry;
+        final ClockFrame frame = new ClockFrame();
+
+        /** Per sender: when the oldest frame waiting was published. */
+        final long[] batchStart;
+
+        /** Per board: when its running player presses next. */
+        final long[] nextPress;
+
+        /** Per board: when its last frame was published. */
+        final long[] lastFrame;
+
+        long presses, flags, errorSamples, errorSum, maxError;
+
+        /** Sender restarts, and what the replaced broadcasters sent. */
+        long restarts, retiredFrames, retiredDatagrams;
+
+        /** Time spent publishing and sending frames. */
+        long sendNanos;
+
+        final ClockRegistry.FlagListener flagFall =
+            new ClockRegistry.FlagListener() {
+                public void flagFell(int game, int player) {
+                    flags++;
+                    publish(game);
+                    // The next round starts right away
+                    newGame(game);
+                }
+            };
+
+        Hall(Random random, int boards, ClockBroadcaster[] broadcasters,
+             MulticastSocket[] sockets, InetSocketAddress destination) {
+            this.random = random;
+            this.boards = boards;
+            this.broadcasters = broadcasters;
+            this.sockets = sockets;
+            this.destination = destination;
+            registry = new ClockRegistry(SYSTEM_TIME, boards, MILLI);
+            batchStart = new long[broadcasters.length];
+            nextPress = new long[boards];
+            lastFrame = new long[boards];
+            for (int board = 0; board < boards; board++) {
+                registry.add(new StandardTimeControl(
+                    DelayType.NO_DELAY, 1, 1, 0));
+                newGame(board);
+            }
+        }
+
+        void newGame(int board) {
+            DelayType[] types = DelayType.values();
+            // Short games, so that some flags fall
+            long initTime = 3000 + random.nextInt(27000);
+            registry.setUp(board, new StandardTimeControl(
+                types[random.nextInt(types.length)], initTime, initTime,
+                random.nextInt(3000)));
+            registry.press(board, 2);
+            nextPress[board] = SYSTEM_TIME.nanoTime() + thinkTime();
+            publish(board);
+        }
+
+        long thinkTime() {
+            return (long)(random.nextDouble() * 8 * SECOND);
+        }
+
+        void publish(int board) {
+            long start = SYSTEM_TIME.nanoTime();
+            int sender = board / BOARDS_PER_SENDER;
+            frame.set(board, registry, board);
+            if (broadcasters[sender].batched() == 0) {
+                batchStart[sender] = start;
+            }
+            if (!broadcasters[sender].publish(frame)) {
+                flush(sender);
+                batchStart[sender] = start;
+                broadcasters[sender].publish(frame);
+            }
+            lastFrame[board] = start;
+            sendNanos += SYSTEM_TIME.nanoTime() - start;
+        }
+
+        void flush(int sender) {
+            long start = SYSTEM_TIME.nanoTime();
+            try {
+                broadcasters[sender].flush();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            sendNanos += SYSTEM_TIME.nanoTime() - start;
+        }
+
+        /**
+         * Replace a sender's broadcaster with a new one, numbering its
+         * frames from 1 again, and publish all of its boards.
+         */
+        void restart(int sender) {
+            flush(sender);
+            retiredFrames += broadcasters[sender].framesSent();
+            retiredDatagrams += broadcasters[sender].datagramsSent();
+            broadcasters[sender] = new ClockBroadcaster(
+                sockets[sender], destination, SYSTEM_TIME);
+            restarts++;
+
+            int first = sender * BOARDS_PER_SENDER;
+            for (int board = first; board < first + BOARDS_PER_SENDER;
+                 board++) {
+                publish(board);
+            }
+        }
+
+        void run(ClockReceiver receiver) throws InterruptedException {
+            long start = SYSTEM_TIME.nanoTime();
+            long nextSample = start + 100 * MILLI;
+            long nextRestart = start + RESTART_INTERVAL;
+
+            for (long now = start; now - start < DURATION;
+                 now = SYSTEM_TIME.nanoTime()) {
+                for (int board = 0; board < boards; board++) {
+                    if (now >= nextPress[board]) {
+                        registry.press(board, registry.onTheClock(board));
+                        nextPress[board] = now + thinkTime();
+                        presses++;
+                        publish(board);
+                    }
+                }
+
+                registry.poll(flagFall);
+
+                if (now >= nextRestart) {
+                    restart(random.nextInt(broadcasters.length));
+                    nextRestart += RESTART_INTERVAL;
+                }
+
+                for (int s = 0; s < broadcasters.length; s++) {
+                    if (broadcasters[s].batched() > 0
+                        && now - batchStart[s] >= BATCH_DELAY) {
+                        flush(s);
+                    }
+                }
+
+                if (now >= nextSample) {
+                    sample(receiver);
+                    nextSample += 100 * MILLI;
+                }
+
+                Thread.sleep(1);
+            }
+
+            for (int s = 0; s < broadcasters.length; s++) {
+                flush(s);
+            }
+        }
+
+        void sample(ClockReceiver receiver) {
+            long now = SYSTEM_TIME.nanoTime();
+            for (int board = 0; board < boards; board++) {
+                // A frame may still be waiting for its batch, or on the way
+                if (!receiver.seen(board)
+                    || now - lastFrame[board] < BATCH_DELAY + 10 * MILLI) {
+                    continue;
+                }
+                for (int player = 1; player <= 2; player++) {
+                    long error = Math.abs(
+                        receiver.remainingNanos(board, player)
+                        - registry.remainingNanos(board, player));
+                    errorSum += error;
+                    errorSamples++;
+                    maxError = Math.max(maxError, error);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,291 @@
+/*************************************************************************
+ * File: HallBenchmark.java
+ *
+ * Measures and checks the clock registry with a hall full of boards.
+ *
+ * Created: 2026-10-18
+ *
+ * Author: Simen Heggestøyl
+ *
+ *************************************************************************
+ *
+ *   This file is part of Simple Chess Clock (SCC).
+ *
+ *   SCC is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   SCC is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with SCC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *************************************************************************/
+package com.chessclock.bench;
+
+import com.chessclock.core.ClockEngine;
+import com.chessclock.core.ClockRegistry;
+import com.chessclock.core.DelayType;
+import com.chessclock.core.StandardTimeControl;
+import com.chessclock.core.TimeControl;
+
+import java.util.Random;
+
+/**
+ * Measures ClockRegistry with a hall full of boards: the memory per game
+ * (next to a ClockEngine per game), the time per press and per poll for
+ * flag falls, and a run of fast games in virtual time where every board is
+ * checked against its own ClockEngine. Every flag fall must be reported by
+ * the registry, once, never early, and at most one resolution late.
+ *
+ * Run with "make hall", optionally giving the number of boards and a
+ * seed: make hall BOARDS=10000 SEED=1
+ */
+public class HallBenchmark {
+    private static final long MILLI = 1000000;
+    private static final long SECOND = 1000 * MILLI;
+    private static final long RESOLUTION = MILLI;
+    private static final long OPS = 1000000;
+    private static final DelayType[] TYPES = DelayType.values();
+
+    /** Plenty of time, so that no flag falls while measuring. */
+    private static final long GAME_TIME = 1000L * 60 * 60 * 1000;
+
+    /** Keeps measured objects reachable while the heap is measured. */
+    private static Object kept;
+
+    public static void main(String[] args) {
+        int boards = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 1;
+
+        memory(boards);
+
+        Bench.header("ClockRegistry, " + boards + " boards");
+        press(boards);
+        poll(boards);
+
+        System.out.println();
+        if (!check(boards, seed)) {
+            System.out.println("FAILED");
+            System.exit(1);
+        }
+    }
+
+    private static void memory(int boards) {
+        TimeControl control = new StandardTimeControl(
+            DelayType.FISCHER, GAME_TIME, GAME_TIME, 2000);
+        VirtualTime time = new VirtualTime(0);
+
+        long before = usedHeap();
+        ClockRegistry registry = new ClockRegistry(time, boards, RESOLUTION);
+        for (int board = 0; board < boards; board++) {
+            registry.add(control);
+        }
+        kept = registry;
+        long registryBytes = usedHeap() - before;
+        kept = null;
+
+        before = usedHeap();
+        ClockEngine[] engines = new ClockEngine[boards];
+        for (int board = 0; board < boards; board++) {
+            engines[board] = new ClockEngine(time);
+            engines[board].setUp(control);
+        }
+        kept = engines;
+        long engineBytes = usedHeap() - before;
+        kept = null;
+
+        System.out.println(String.format(
+            "Memory per game: ClockRegistry %d bytes, ClockEngine %d bytes",
+            registryBytes / boards, engineBytes / boards));
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /** A hall where every board is running. */
+    private static ClockRegistry hall(VirtualTime time, int boards) {
+        ClockRegistry registry = new ClockRegistry(time, boards, RESOLUTION);
+        for (int board = 0; board < boards; board++) {
+            int game = registry.add(new StandardTimeControl(
+                TYPES[board % TYPES.length], GAME_TIME, GAME_TIME, 2000));
+            registry.press(game, 2);
+        }
+        return registry;
+    }
+
+    private static void press(final int boards) {
+        final VirtualTime time = new VirtualTime(0);
+        final ClockRegistry registry = hall(time, boards);
+
+        Bench.run("press, random board", OPS, new Bench.Op() {
+            public long run(long i) {
+                // Spread the presses over the boards, 10 microseconds apart
+                time.set(i * 10000);
+                int game = (int)((i * 7919) % boards);
+                registry.press(game, registry.onTheClock(game));
+                return registry.remainingNanos(game, 1);
+            }
+        });
+    }
+
+    private static void poll(int boards) {
+        final VirtualTime time = new VirtualTime(0);
+        final ClockRegistry registry = hall(time, boards);
+        final ClockRegistry.FlagListener listener =
+            new ClockRegistry.FlagListener() {
+                public void flagFell(int game, int player) {
+                }
+            };
+
+        Bench.run("poll, every resolution", OPS, new Bench.Op() {
+            public long run(long i) {
+                time.set(i * RESOLUTION);
+                registry.poll(listener);
+                return registry.size();
+            }
+        });
+    }
+
+    /**
+     * Play fast games on every board for a while in virtual time, starting
+     * a new game on a board as soon as a flag falls there, and check the
+     * registry against an engine per board.
+     */
+    private static boolean check(final int boards, long seed) {
+        final Random random = new Random(seed);
+        final VirtualTime time = new VirtualTime(0);
+        final ClockRegistry registry =
+            new ClockRegistry(time, boards, RESOLUTION);
+        final ClockEngine[] engines = new ClockEngine[boards];
+        final boolean[] reported = new boolean[boards];
+
+        for (int board = 0; board < boards; board++) {
+            engines[board] = new ClockEngine(time);
+            newGame(registry, engines, board, random);
+        }
+
+        final long[] counts = new long[4];
+        final long[] maxLateness = new long[1];
+        ClockRegistry.FlagListener listener =
+            new ClockRegistry.FlagListener() {
+                public void flagFell(int game, int player) {
+                    ClockEngine engine = engines[game];
+                    long lateness = time.nanoTime() - engine.flagFallNanos();
+                    if (reported[game] || player != engine.onTheClock()
+                        || lateness < 0 || lateness > RESOLUTION) {
+                        counts[1]++;
+                    }
+                    reported[game] = true;
+                    maxLateness[0] = Math.max(maxLateness[0], lateness);
+                    counts[0]++;
+                }
+            };
+
+        long presses = 0;
+        long mismatches = 0;
+        long missed = 0;
+        long start = System.nanoTime();
+
+        // Ten minutes, polled every millisecond, with a press somewhere in
+        // the hall about every 200 microseconds
+        for (long now = 0; now < 600 * SECOND; now += MILLI) {
+            for (int n = random.nextInt(10); n > 0; n--) {
+                time.set(now + random.nextInt((int)MILLI));
+                int game = random.nextInt(boards);
+                int player = engines[game].onTheClock();
+                if (player == 0) {
+                    player = 2;
+                } else if (random.nextInt(20) == 0) {
+                    // Wrong clock
+                    player = ClockEngine.opponent(player);
+                }
+
+                if (registry.press(game, player)
+                    != engines[game].press(player)) {
+                    mismatches++;
+                }
+                if (registry.remainingNanos(game, 1)
+                    != engines[game].remainingNanos(1)
+                    || registry.remainingNanos(game, 2)
+                    != engines[game].remainingNanos(2)
+                    || registry.flagFallNanos(game)
+                    != engines[game].flagFallNanos()
+                    || registry.outOfTime(game, 1)
+                    != engines[game].outOfTime(1)
+                    || registry.outOfTime(game, 2)
+                    != engines[game].outOfTime(2)) {
+                    mismatches++;
+                }
+                presses++;
+            }
+
+            time.set(now + MILLI);
+            registry.poll(listener);
+
+            // Look for flags the registry missed every tenth of a second
+            if (now % (100 * MILLI) != 0) {
+                continue;
+            }
+            for (int board = 0; board < boards; board++) {
+                ClockEngine engine = engines[board];
+                int running = engine.onTheClock();
+                if (running == 0 || !engine.outOfTime(running)) {
+                    continue;
+                }
+                // Flags falling within the last resolution may still come
+                if (time.nanoTime() - engine.flagFallNanos() < RESOLUTION) {
+                    continue;
+                }
+                if (!reported[board]) {
+                    missed++;
+                }
+                newGame(registry, engines, board, random);
+                reported[board] = false;
+                counts[2]++;
+            }
+        }
+
+        System.out.println(String.format(
+            "Hall check: %d boards, %d presses, %d games played, "
+            + "%d flag falls in %.1f s",
+            boards, presses, counts[2], counts[0],
+            (System.nanoTime() - start) / 1e9));
+        System.out.println(String.format(
+            "Mismatches: %d, missed flags: %d, wrong flags: %d, "
+            + "max flag latency: %.3f ms",
+            mismatches, missed, counts[1], maxLateness[0] / 1e6));
+
+        return mismatches == 0 && missed == 0 && counts[1] == 0;
+    }
+
+    private static void newGame(ClockRegistry registry,
+                                ClockEngine[] engines, int board,
+                                Random random) {
+        // Bullet to blitz, so that plenty of flags fall, and now and then a
+        // Bronstein game with no time but the delay
+        long initTime = 5000 + random.nextInt(175000);
+        TimeControl control = random.nextInt(20) == 0
+            ? new StandardTimeControl(
+                DelayType.BRONSTEIN, 0, 0, 1000 + random.nextInt(3000))
+            : new StandardTimeControl(
+                TYPES[random.nextInt(TYPES.length)], initTime, initTime,
+                random.nextInt(3000));
+
+        if (registry.size() <= board) {
+            registry.add(control);
+        } else {
+            registry.setUp(board, control);
+        }
+        engines[board].setUp(control);
+    }
+}
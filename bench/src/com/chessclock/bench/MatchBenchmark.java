@@ -0,0 +1,209 @@
+/*************************************************************************
+ * File: MatchBenchmark.java
+ *
+ * Measures engine game clocks on many threads at once.
+ *
+ * Created: 2026-10-18
+ *
+ * Author: Simen Heggestøyl
+ *
+ *************************************************************************
+ *
+ *   This file is part of Simple Chess Clock (SCC).
+ *
+ *   SCC is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   SCC is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with SCC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *************************************************************************/
+package com.chessclock.bench;
+
+import com.chessclock.core.DelayType;
+import com.chessclock.core.MatchClock;
+import com.chessclock.core.StandardTimeControl;
+import com.chessclock.core.TimeSource;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Plays thousands of engine games' clocks at once on a growing number of
+ * threads, as a test rig would, and reports the moves per second and the
+ * bytes allocated per move. A move is asking for the UCI "go" command of
+ * the player to move, then pressing their clock.
+ *
+ * Each thread count is run twice: with every thread playing its own games
+ * (as when each game has its own thread or worker), and with all threads
+ * playing random games from the whole pool, so that they contend for the
+ * same clocks.
+ *
+ * Run with "make match", optionally giving the number of games:
+ * make match MATCHES=4096
+ */
+public class MatchBenchmark {
+    private static final long DURATION = 1000000000L;
+    private static final DelayType[] TYPES = DelayType.values();
+
+    /** Games are started over after this many moves, as real games end. */
+    private static final int MAX_MOVES = 150;
+
+    /** Plenty of time, so that no flag falls while measuring. */
+    private static final long GAME_TIME = 1000L * 60 * 60 * 1000;
+
+    private static final TimeSource SYSTEM_TIME = new TimeSource() {
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+    };
+
+    private static volatile boolean running;
+    private static volatile long sink;
+
+    public static void main(String[] args) throws InterruptedException {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 4096;
+        int cores = Runtime.getRuntime().availableProcessors();
+
+        MatchClock[] clocks = new MatchClock[games];
+        for (int i = 0; i < games; i++) {
+            clocks[i] = new MatchClock(SYSTEM_TIME, new StandardTimeControl(
+                TYPES[i % TYPES.length], GAME_TIME, GAME_TIME, 1000,
+                new StandardTimeControl.Period(40, GAME_TIME)));
+            clocks[i].start();
+        }
+
+        // Warm up
+        run(clocks, 1, false);
+        run(clocks, 1, true);
+
+        System.out.println(String.format(
+            "%d games, %d cores", games, cores));
+        System.out.println(String.format(
+            "%-8s %-7s %14s %14s %8s %10s", "Threads", "Games",
+            "moves/s", "per thread", "scaling", "bytes/move"));
+
+        double[] base = new double[2];
+        for (int threads = 1; threads <= 2 * cores; threads *= 2) {
+            for (int mode = 0; mode < 2; mode++) {
+                long[] result = run(clocks, threads, mode == 1);
+                double perSecond = result[0] * 1e9 / DURATION;
+                if (threads == 1) {
+                    base[mode] = perSecond;
+                }
+                System.out.println(String.format(
+                    "%-8d %-7s %14.0f %14.0f %8.2f %10.2f", threads,
+                    mode == 1 ? "shared" : "own", perSecond,
+                    perSecond / threads, perSecond / base[mode],
+                    (double)result[1] / Math.max(1, result[0])));
+            }
+        }
+    }
+
+    /**
+     * Play moves on the given number of threads for DURATION. Return the
+     * number of moves played and the bytes allocated while playing them.
+     */
+    private static long[] run(final MatchClock[] clocks, final int threads,
+                              final boolean shared)
+        throws InterruptedException {
+        final long[] moves = new long[threads];
+        final long[] allocated = new long[threads];
+        final CountDownLatch ready = new CountDownLatch(threads);
+        final CountDownLatch go = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+
+        for (int t = 0; t < threads; t++) {
+            final int worker = t;
+            workers[t] = new Thread(new Runnable() {
+                public void run() {
+                    ready.countDown();
+                    try {
+                        go.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    long before = allocatedBytes();
+                    moves[worker] = play(clocks, worker, threads, shared);
+                    allocated[worker] = allocatedBytes() - before;
+                }
+            });
+            workers[t].start();
+        }
+
+        ready.await();
+        running = true;
+        go.countDown();
+        Thread.sleep(DURATION / 1000000);
+        running = false;
+
+        long[] total = new long[2];
+        for (int t = 0; t < threads; t++) {
+            workers[t].join();
+            total[0] += moves[t];
+            total[1] += allocated[t];
+        }
+        return total;
+    }
+
+    private static long play(MatchClock[] clocks, int worker, int threads,
+                             boolean shared) {
+        StringBuilder go = new StringBuilder(128);
+        long moves = 0;
+        long result = 0;
+        int next = worker;
+        int random = worker * 7919 + 1;
+
+        while (running) {
+            int game;
+            if (shared) {
+                // xorshift, to pick games without allocating or locking
+                random ^= random << 13;
+                random ^= random >>> 17;
+                random ^= random << 5;
+                game = (random & Integer.MAX_VALUE) % clocks.length;
+            } else {
+                game = next;
+                next += threads;
+                if (next >= clocks.length) {
+                    next = worker;
+                }
+            }
+
+            MatchClock clock = clocks[game];
+            go.setLength(0);
+            clock.appendGo(go);
+            int player = clock.toMove();
+            if (!clock.press(player, SYSTEM_TIME.nanoTime())
+                && clock.isFlagged(player)
+                || clock.moves(player) >= MAX_MOVES) {
+                clock.start();
+            }
+            result += go.length();
+            moves++;
+        }
+
+        sink += result;
+        return moves;
+    }
+
+    /** Return bytes allocated by this thread so far, or 0 if unknown. */
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean)threads)
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+
+        return 0;
+    }
+}
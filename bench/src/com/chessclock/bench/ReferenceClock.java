@@ -0,0 +1,213 @@
+/*************************************************************************
+ * File: ReferenceClock.java
+ *
+ * A straightforward model of the clock rules, to check the engine against.
+ *
+ * Created: 2026-10-18
+ *
+ * Author: Simen Heggestøyl
+ *
+ *************************************************************************
+ *
+ *   This file is part of Simple Chess Clock (SCC).
+ *
+ *   SCC is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   SCC is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with SCC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *************************************************************************/
+package com.chessclock.bench;
+
+import com.chessclock.core.DelayType;
+
+/**
+ * An independent model of the clock rules. Where the engine charges time
+ * incrementally whenever a clock is pressed or paused, this model keeps the
+ * whole duration of each player's turn (summing up the parts of turns
+ * interrupted by pauses), and applies the time control to a turn only once
+ * it's completed. It's slow to change and meant to be obviously right.
+ *
+ * All times are in nanoseconds.
+ */
+public class ReferenceClock {
+    private final DelayType type;
+    private final long[] initialTime = new long[3];
+    private final long delay;
+    private final int[] periodEnd;
+    private final long[] periodTime;
+
+    /** Time left per player as of their last completed turn. */
+    private final long[] timeLeft = new long[3];
+    private final int[] moves = new int[3];
+
+    /** The current turn: whose it is, and how long it has lasted so far. */
+    private int turnPlayer = 0;
+    private long turnDuration = 0;
+
+    /** When the running part of the current turn started. */
+    private long runningSince;
+    private boolean running = false;
+
+    /** How many completed turns were Bronstein turns within the delay. */
+    public int turnsWithinDelay = 0;
+
+    /** How many increments were cut short by Capped Fischer. */
+    public int cappedIncrements = 0;
+
+    /** The duration of the last completed turn. */
+    public long lastTurnDuration = 0;
+
+    public ReferenceClock(DelayType type, long initTime1, long initTime2,
+                          long delay, int[] periodMoves, long[] periodTime) {
+        this.type = type;
+        initialTime[1] = initTime1;
+        initialTime[2] = initTime2;
+        this.delay = delay;
+        this.periodTime = periodTime;
+        periodEnd = new int[periodMoves.length];
+        for (int i = 0, sum = 0; i < periodMoves.length; i++) {
+            sum += periodMoves[i];
+            periodEnd[i] = sum;
+        }
+        timeLeft[1] = initTime1;
+        timeLeft[2] = initTime2;
+    }
+
+    /** Return the player whose clock is running, or 0. */
+    public int running() {
+        return running ? turnPlayer : 0;
+    }
+
+    private long duration(long now) {
+        return turnDuration + (running ? now - runningSince : 0);
+    }
+
+    private long bronsteinDelay() {
+        return type == DelayType.BRONSTEIN ? delay : 0;
+    }
+
+    /** Return the time left for the given player. */
+    public long timeLeft(int player, long now) {
+        if (player != turnPlayer) {
+            return timeLeft[player];
+        }
+
+        long charged = Math.max(0, duration(now) - bronsteinDelay());
+        return Math.max(0, timeLeft[player] - charged);
+    }
+
+    /** Return the delay left in the current turn. */
+    public long delayLeft(long now) {
+        if (turnPlayer == 0) {
+            return bronsteinDelay();
+        }
+
+        return Math.max(0, bronsteinDelay() - duration(now));
+    }
+
+    /**
+     * Return true if the given player is out of time: no time and no delay
+     * left, counting the delay of their next turn if it isn't their turn.
+     */
+    public boolean outOfTime(int player, long now) {
+        if (timeLeft(player, now) > 0) {
+            return false;
+        }
+
+        return player == turnPlayer
+            ? delayLeft(now) == 0
+            : bronsteinDelay() == 0;
+    }
+
+    /** Return when the running player's flag falls, or Long.MAX_VALUE. */
+    public long flagFall() {
+        if (!running) {
+            return Long.MAX_VALUE;
+        }
+
+        // The turn may last the delay plus the time left, in total. A clock
+        // restarted with nothing left is flagged as it starts.
+        return runningSince + Math.max(
+            0, bronsteinDelay() + timeLeft[turnPlayer] - turnDuration);
+    }
+
+    /** The given player presses their clock. Return false if ignored. */
+    public boolean press(int player, long now) {
+        int opponent = 3 - player;
+
+        if (running() == opponent) {
+            return false;
+        }
+
+        if (running && outOfTime(turnPlayer, now)) {
+            return false;
+        }
+
+        if (turnPlayer == player) {
+            completeTurn(now);
+        }
+
+        if (turnPlayer != opponent) {
+            turnPlayer = opponent;
+            turnDuration = 0;
+        }
+
+        running = true;
+        runningSince = now;
+        return true;
+    }
+
+    public void pause(long now) {
+        if (running) {
+            turnDuration = duration(now);
+            running = false;
+        }
+    }
+
+    /** Apply a completed turn of turnPlayer to their time. */
+    private void completeTurn(long now) {
+        int player = turnPlayer;
+        long duration = duration(now);
+        lastTurnDuration = duration;
+
+        if (type == DelayType.BRONSTEIN && duration <= delay) {
+            turnsWithinDelay++;
+        }
+
+        long left = timeLeft(player, now);
+        moves[player]++;
+
+        long cap = initialTime[player];
+        for (int i = 0; i < periodEnd.length; i++) {
+            if (periodEnd[i] <= moves[player]) {
+                cap += periodTime[i];
+            }
+            if (periodEnd[i] == moves[player]) {
+                left += periodTime[i];
+            }
+        }
+
+        if (type == DelayType.FISCHER) {
+            left += delay;
+        } else if (type == DelayType.CAPPED_FISCHER) {
+            if (left + delay > cap) {
+                cappedIncrements++;
+            }
+            left = Math.min(left + delay, cap);
+        }
+
+        timeLeft[player] = left;
+        turnPlayer = 0;
+        turnDuration = 0;
+        running = false;
+    }
+}
@@ -0,0 +1,697 @@
+/*************************************************************************
+ * File: Simulator.java
+ *
+ * Replays random games against the clock engine.
+ *
+ * Created: 2026-10-18
+ *
+ * Author: Simen Heggestøyl
+ *
+ *************************************************************************
+ *
+ *   This file is part of Simple Chess Clock (SCC).
+ *
+ *   SCC is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   SCC is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with SCC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *************************************************************************/
+package com.chessclock.bench;
+
+import com.chessclock.core.ClockEngine;
+import com.chessclock.core.DelayType;
+import com.chessclock.core.GameJournal;
+import com.chessclock.core.MoveLog;
+import com.chessclock.core.StandardTimeControl;
+import com.chessclock.core.ThinkTimeStats;
+import com.chessclock.core.TimeFormatter;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Plays large numbers of random games on the clock engine in virtual time,
+ * and checks the engine against ReferenceClock after every step.
+ *
+ * Each game gets a random time control, and a random but seeded timeline of
+ * presses, pauses, presses on the wrong clock and think times long enough to
+ * lose on time. Between the presses, the app's refresh loop is replayed: a
+ * refresh is scheduled when the displayed digits change next, and fires
+ * somewhat late, sometimes very late. Presses are handled late in the same
+ * way, and the engine is given the time the press actually happened, which
+ * is what the model is charged by. The simulator reports the largest
+ * difference between the engine and the model (drift), flags detected when
+ * they shouldn't be or not detected when they should, and how late flag
+ * falls were noticed.
+ *
+ * At the end of each game, the move log's think time statistics are
+ * checked against an exact computation from the logged moves. The count,
+ * mean, standard deviation and longest think must match, as must the 90th
+ * percentile up to ThinkTimeStats.EXACT_MOVES moves. Beyond that it's an
+ * estimate, and the simulator reports how far its rank is from the 90th
+ * percentile. The move log's PGN and CSV exports are read back and checked
+ * against the logged moves too.
+ *
+ * Run with "make simulate", optionally giving the number of games and a
+ * seed: make simulate GAMES=1000000 SEED=1
+ */
+public class Simulator {
+    private static final long MILLI = 1000000;
+    private static final long SECOND = 1000 * MILLI;
+    private static final int MAX_PLIES = 300;
+    /** Plies of a marathon game, more than a new game journal holds. */
+    private static final int MARATHON_PLIES = 2500;
+    private static final DelayType[] TYPES = DelayType.values();
+
+    /** A move number, or a clock comment, in the PGN export. */
+    private static final Pattern PGN_TOKEN = Pattern.compile(
+        "(\\d+)(\\.\\.\\.|\\.)|\\{\\[%clk (\\d+:\\d\\d:\\d\\d)\\]\\}");
+
+    /** Results from a batch of games. */
+    static class Stats {
+        long games, noTimeGames, marathonGames, restartedFlags, presses, rejectedPresses, pauses, restarts, reboots, ticks, flags;
+        long maxDrift, maxFlagLatency;
+        long wrongFlags, flagFallMismatches, pressMismatches, logMismatches;
+        long failedRecoveries, statsMismatches, exportMismatches;
+        long turnsWithinDelay, cappedIncrements;
+
+        /** 90th percentile estimates checked, and their rank errors. */
+        long estimates;
+        double rankError, maxRankError;
+
+        void add(Stats o) {
+            games += o.games;
+            noTimeGames += o.noTimeGames;
+            marathonGames += o.marathonGames;
+            restartedFlags += o.restartedFlags;
+            presses += o.presses;
+            rejectedPresses += o.rejectedPresses;
+            pauses += o.pauses;
+            restarts += o.restarts;
+            reboots += o.reboots;
+            ticks += o.ticks;
+            flags += o.flags;
+            maxDrift = Math.max(maxDrift, o.maxDrift);
+            maxFlagLatency = Math.max(maxFlagLatency, o.maxFlagLatency);
+            wrongFlags += o.wrongFlags;
+            flagFallMismatches += o.flagFallMismatches;
+            pressMismatches += o.pressMismatches;
+            logMismatches += o.logMismatches;
+            failedRecoveries += o.failedRecoveries;
+            statsMismatches += o.statsMismatches;
+            exportMismatches += o.exportMismatches;
+            estimates += o.estimates;
+            rankError += o.rankError;
+            maxRankError = Math.max(maxRankError, o.maxRankError);
+            turnsWithinDelay += o.turnsWithinDelay;
+            cappedIncrements += o.cappedIncrements;
+        }
+
+        boolean failed() {
+            return maxDrift > 0 || wrongFlags > 0 || flagFallMismatches > 0
+                || pressMismatches > 0 || logMismatches > 0
+                || failedRecoveries > 0 || statsMismatches > 0
+                || exportMismatches > 0;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        final long games = args.length > 0 ? Long.parseLong(args[0]) : 1000000;
+        final long seed = args.length > 1 ? Long.parseLong(args[1]) : 1;
+        final int threads = Runtime.getRuntime().availableProcessors();
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<Stats>> results = new ArrayList<Future<Stats>>();
+        long start = System.nanoTime();
+
+        for (int t = 0; t < threads; t++) {
+            final int worker = t;
+            results.add(pool.submit(new Callable<Stats>() {
+                public Stats call() throws IOException {
+                    Stats stats = new Stats();
+                    File file = File.createTempFile("journal", null);
+                    file.deleteOnExit();
+                    Device device = new Device(file);
+                    for (long g = worker; g < games; g += threads) {
+                        new Game(new Random(seed * 1000003 + g), stats,
+                                 device).play();
+                    }
+                    return stats;
+                }
+            }));
+        }
+
+        Stats total = new Stats();
+        for (Future<Stats> result : results) {
+            total.add(result.get());
+        }
+        pool.shutdown();
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println(String.format(
+            "%d games on %d threads in %.1f s (%.0f games/minute)",
+            total.games, threads, seconds, total.games / seconds * 60));
+        System.out.println(String.format(
+            "presses: %d (%d rejected), pauses: %d, restarts: %d (%d reboots), refreshes: %d, flags: %d (%d restarted)",
+            total.presses, total.rejectedPresses, total.pauses, total.restarts,
+            total.reboots, total.ticks, total.flags, total.restartedFlags));
+        System.out.println(String.format(
+            "Bronstein moves within the delay: %d, capped increments: %d, Bronstein games with no time: %d, marathon games: %d",
+            total.turnsWithinDelay, total.cappedIncrements, total.noTimeGames,
+            total.marathonGames));
+        System.out.println(String.format(
+            "max drift: %d ns, max flag fall detection latency: %.1f ms",
+            total.maxDrift, total.maxFlagLatency / 1e6));
+        System.out.println(String.format(
+            "wrong flags: %d, flag fall time mismatches: %d, press mismatches: %d",
+            total.wrongFlags, total.flagFallMismatches,
+            total.pressMismatches));
+        System.out.println(String.format(
+            "move log mismatches: %d, export mismatches: %d, failed recoveries: %d",
+            total.logMismatches, total.exportMismatches,
+            total.failedRecoveries));
+        System.out.println(String.format(
+            "think time stats mismatches: %d, p90 rank error: mean %.3f, max %.3f (%d estimates)",
+            total.statsMismatches,
+            total.rankError / Math.max(1, total.estimates),
+            total.maxRankError, total.estimates));
+
+        if (total.failed()) {
+            System.out.println("FAILED");
+            System.exit(1);
+        }
+    }
+
+    /** The device the games are played on, with the journal it opened. */
+    static class Device {
+        private final File file;
+        /** When the device booted, in wall-clock milliseconds. */
+        private long boot = 0;
+        GameJournal journal;
+
+        Device(File file) throws IOException {
+            this.file = file;
+            journal = new GameJournal(file, boot);
+        }
+
+        /** Reboot an hour later, and open the journal again. */
+        void reboot() throws IOException {
+            boot += 3600 * 1000;
+            journal = new GameJournal(file, boot);
+        }
+    }
+
+    /** One simulated game. */
+    static class Game {
+        private final Random random;
+        private final Stats stats;
+        private final VirtualTime time;
+        private final Device device;
+        /** When the game was last journaled. */
+        private long journaled;
+        private final StandardTimeControl control;
+        /** Like control, but for player 1 starting with a second more. */
+        private final StandardTimeControl otherControl;
+        private ClockEngine engine;
+        private final ReferenceClock reference;
+        private final TimeFormatter formatter = new TimeFormatter();
+        private final long meanThink;
+        private final int plies;
+        private long now;
+
+        Game(Random random, Stats stats, Device device) {
+            this.random = random;
+            this.stats = stats;
+            this.device = device;
+
+            DelayType type = TYPES[random.nextInt(TYPES.length)];
+            long initTime1 = 1000 * (1 + random.nextInt(180))
+                + random.nextInt(1000);
+            long initTime2 = random.nextBoolean()
+                ? initTime1
+                : 1000 * (1 + random.nextInt(180));
+            long delay = random.nextInt(4) == 0
+                ? 0
+                : 1000 * random.nextInt(15) + random.nextInt(2) * random.nextInt(1000);
+
+            // Now and then a Bronstein game with no time but the delay,
+            // where a player only loses by using up a turn's whole delay
+            boolean noTime = random.nextInt(20) == 0;
+            if (noTime) {
+                type = DelayType.BRONSTEIN;
+                initTime1 = 0;
+                initTime2 = 0;
+                delay = 1000 * (1 + random.nextInt(15));
+                stats.noTimeGames++;
+            }
+
+            // Now and then a marathon game with a generous increment, with
+            // more moves than a new journal holds
+            boolean marathon = !noTime && random.nextInt(200) == 0;
+            if (marathon) {
+                type = DelayType.FISCHER;
+                initTime1 = 60000 * (1 + random.nextInt(10));
+                initTime2 = initTime1;
+                delay = 1000 * (5 + random.nextInt(10));
+                stats.marathonGames++;
+            }
+            plies = marathon ? MARATHON_PLIES : MAX_PLIES;
+
+            int[] periodMoves = new int[0];
+            long[] periodTime = new long[0];
+            StandardTimeControl.Period[] periods =
+                new StandardTimeControl.Period[0];
+            if (random.nextInt(4) == 0) {
+                periodMoves = new int[] {1 + random.nextInt(20)};
+                periodTime = new long[] {1000 * (1 + random.nextInt(60))};
+                periods = new StandardTimeControl.Period[] {
+                    new StandardTimeControl.Period(periodMoves[0], periodTime[0])
+                };
+                periodTime[0] *= MILLI;
+            }
+
+            now = random.nextLong() >>> 8;
+            time = new VirtualTime(now);
+            control = new StandardTimeControl(
+                type, initTime1, initTime2, delay, periods);
+            otherControl = new StandardTimeControl(
+                type, initTime1 + 1000, initTime2, delay, periods);
+            engine = new ClockEngine(time);
+            engine.setUp(control);
+            device.journal.reset(engine);
+            journaled = now;
+            reference = new ReferenceClock(
+                type, initTime1 * MILLI, initTime2 * MILLI, delay * MILLI,
+                periodMoves, periodTime);
+
+            formatter.setShowDeciseconds(random.nextBoolean());
+            meanThink = noTime
+                ? delay * MILLI / 3
+                : marathon
+                ? delay * MILLI / 4
+                : Math.min(initTime1, initTime2) * MILLI / 20;
+        }
+
+        void play() throws IOException {
+            stats.games++;
+            press(1 + random.nextInt(2));
+
+            for (int ply = 0; ply < plies; ply++) {
+                int mover = reference.running();
+                long eventTime = now + think();
+
+                if (refresh(mover, eventTime)) {
+                    // The app journals the game as the flag falls
+                    advance(now + lateness());
+                    record();
+                    check();
+
+                    // Now and then the flagged clock is paused and started
+                    // again, and its flag falls anew as it starts
+                    if (random.nextInt(4) == 0) {
+                        stats.restartedFlags++;
+                        engine.pause();
+                        reference.pause(now);
+                        check();
+                        advance(now + think());
+                        press(3 - mover);
+                    }
+                    break;
+                }
+                advance(eventTime);
+
+                int event = random.nextInt(40);
+                if (event == 0) {
+                    // Pause, and resume by pressing either clock
+                    stats.pauses++;
+                    engine.pause();
+                    record();
+                    reference.pause(now);
+                    check();
+                    advance(now + think());
+                    press(1 + random.nextInt(2));
+                } else if (event == 1) {
+                    // The process dies, and the game is recovered later
+                    restart();
+                    press(mover);
+                } else if (event == 2) {
+                    // The waiting player presses their clock
+                    press(3 - mover);
+                } else {
+                    press(mover);
+                }
+            }
+
+            stats.turnsWithinDelay += reference.turnsWithinDelay;
+            stats.cappedIncrements += reference.cappedIncrements;
+            checkThinkTimeStats();
+            checkExports();
+        }
+
+        /** Return a random think time, now and then a very long one. */
+        private long think() {
+            long mean = random.nextInt(50) == 0 ? meanThink * 20 : meanThink;
+            return (long)(-Math.log(1 - random.nextDouble()) * mean)
+                + random.nextInt((int)MILLI);
+        }
+
+        /** Return how late a refresh fires. */
+        private long lateness() {
+            int kind = random.nextInt(100);
+            if (kind < 90) {
+                return random.nextInt((int)(2 * MILLI));
+            } else if (kind < 99) {
+                return random.nextInt((int)(50 * MILLI));
+            } else {
+                return random.nextInt((int)SECOND);
+            }
+        }
+
+        private void advance(long to) {
+            now = to;
+            time.set(now);
+        }
+
+        /**
+         * The given player presses their clock now. The press is handled
+         * somewhat later, as when the main thread is busy, but must be
+         * charged as of when it happened.
+         */
+        private void press(int player) {
+            stats.presses++;
+            int logged = engine.moveLog().size();
+            long eventTime = now;
+            advance(now + lateness());
+
+            boolean accepted = engine.press(player, eventTime);
+            if (accepted) {
+                record();
+            }
+            if (accepted != reference.press(player, eventTime)) {
+                stats.pressMismatches++;
+            }
+            if (!accepted) {
+                stats.rejectedPresses++;
+            }
+            check();
+
+            if (engine.moveLog().size() != engine.moves(1) + engine.moves(2)) {
+                stats.logMismatches++;
+            } else if (engine.moveLog().size() > logged) {
+                checkLoggedMove(player);
+            }
+        }
+
+        /** Journal the game, as the app does after a press or pause. */
+        private void record() {
+            device.journal.record(engine);
+            journaled = now;
+        }
+
+        /**
+         * Recover the game from the journal into a new engine, as when the
+         * app starts after the process was killed some time into a turn.
+         * Now and then the time control was changed in between, and the
+         * game must not be recovered under it. Now and then the device
+         * rebooted in between, though its uptime is past the journaled
+         * time again, and the game must be resumed paused as it was
+         * journaled.
+         */
+        private void restart() throws IOException {
+            stats.restarts++;
+
+            // Flags falling are checked by the refresh loop, not here
+            long until = Math.min(now + think() / 4, reference.flagFall() - 1);
+            if (until > now) {
+                advance(until);
+            }
+
+            if (random.nextInt(8) == 0) {
+                stats.reboots++;
+                device.reboot();
+                reference.pause(journaled);
+            }
+            GameJournal journal = device.journal;
+
+            int logged = engine.moveLog().size();
+            if (random.nextInt(4) == 0) {
+                ClockEngine other = new ClockEngine(time);
+                other.setUp(otherControl);
+                if (journal.recover(other)) {
+                    stats.failedRecoveries++;
+                }
+            }
+
+            engine = new ClockEngine(time);
+            engine.setUp(control);
+            if (!journal.recover(engine)
+                    || engine.moveLog().size() != logged) {
+                stats.failedRecoveries++;
+            }
+            check();
+        }
+
+        /** Compare the move just logged to the reference model. */
+        private void checkLoggedMove(int player) {
+            MoveLog log = engine.moveLog();
+            int last = log.size() - 1;
+            if (log.player(last) != player
+                    || log.thinkTime(last) != reference.lastTurnDuration
+                    || log.clockAfter(last) != reference.timeLeft(player, now)) {
+                stats.logMismatches++;
+            }
+        }
+
+        /**
+         * Compare the move log's think time statistics to the exact ones,
+         * computed from the logged moves.
+         */
+        private void checkThinkTimeStats() {
+            MoveLog log = engine.moveLog();
+            ThinkTimeStats thinkStats = log.stats();
+
+            for (int player = 1; player <= 2; player++) {
+                long[] times = new long[log.size()];
+                int n = 0;
+                double sum = 0;
+                for (int i = 0; i < log.size(); i++) {
+                    if (log.player(i) == player) {
+                        times[n++] = log.thinkTime(i);
+                        sum += log.thinkTime(i);
+                    }
+                }
+                times = Arrays.copyOf(times, n);
+                Arrays.sort(times);
+
+                double mean = n == 0 ? 0 : sum / n;
+                double squares = 0;
+                for (long time : times) {
+                    squares += (time - mean) * (time - mean);
+                }
+                double deviation = n == 0 ? 0 : Math.sqrt(squares / n);
+
+                if (thinkStats.count(player) != n
+                        || !close(thinkStats.mean(player), mean)
+                        || !close(thinkStats.standardDeviation(player),
+                                  deviation)
+                        || thinkStats.longest(player)
+                            != (n == 0 ? 0 : times[n - 1])) {
+                    stats.statsMismatches++;
+                }
+
+                long p90 = thinkStats.percentile90(player);
+                if (n <= ThinkTimeStats.EXACT_MOVES) {
+                    if (!close(p90, percentile(times, ThinkTimeStats.P))) {
+                        stats.statsMismatches++;
+                    }
+                } else {
+                    // The fraction of moves at or below the estimate
+                    int rank = 0;
+                    while (rank < n && times[rank] <= p90) {
+                        rank++;
+                    }
+                    double error = Math.abs((double)rank / n - ThinkTimeStats.P);
+                    stats.estimates++;
+                    stats.rankError += error;
+                    stats.maxRankError = Math.max(stats.maxRankError, error);
+                }
+            }
+        }
+
+        /**
+         * Read the move log's CSV and PGN exports back, and compare them to
+         * the logged moves.
+         */
+        private void checkExports() {
+            MoveLog log = engine.moveLog();
+            StringBuilder csv = new StringBuilder();
+            StringBuilder pgn = new StringBuilder();
+            try {
+                log.writeCsv(csv);
+                log.writePgn(pgn);
+            } catch (IOException ex) {
+                throw new AssertionError(ex);
+            }
+
+            // A header, then a line per move
+            String[] lines = csv.toString().split("\n");
+            boolean ok = lines.length == log.size() + 1
+                && lines[0].equals("move,player,think_ms,clock_ms");
+            for (int i = 0; ok && i < log.size(); i++) {
+                ok = lines[i + 1].equals(
+                    (i + 1) + "," + log.player(i) + ","
+                    + toMillis(log.thinkTime(i)) + ","
+                    + toMillis(log.clockAfter(i)));
+            }
+
+            // A clock comment per move. White, who made the first move,
+            // starts every number, and Black only when not following White.
+            int white = log.size() > 0 ? log.player(0) : 1;
+            int number = 0;
+            String numbered = null;
+            int move = 0;
+            Matcher token = PGN_TOKEN.matcher(pgn);
+            while (ok && token.find()) {
+                if (token.group(1) != null) {
+                    ok = numbered == null
+                        && Integer.parseInt(token.group(1)) == ++number;
+                    numbered = token.group(2);
+                    continue;
+                }
+
+                ok = move < log.size()
+                    && token.group(3).equals(clk(log.clockAfter(move)));
+                if (ok && log.player(move) == white) {
+                    ok = ".".equals(numbered);
+                } else if (ok) {
+                    ok = numbered == null
+                        ? move > 0 && log.player(move - 1) == white
+                        : numbered.equals("...");
+                }
+                numbered = null;
+                move++;
+            }
+            ok = ok && move == log.size() && numbered == null
+                && PGN_TOKEN.matcher(pgn).replaceAll("").trim().isEmpty();
+
+            if (!ok) {
+                stats.exportMismatches++;
+            }
+        }
+
+        /** Format a clock like a PGN [%clk] comment, in whole seconds. */
+        private static String clk(long nanos) {
+            long seconds = nanos / SECOND;
+            return String.format("%d:%02d:%02d",
+                                 seconds / 3600, seconds / 60 % 60, seconds % 60);
+        }
+
+        /** Round nanoseconds up to whole milliseconds. */
+        private static long toMillis(long nanos) {
+            return (nanos + MILLI - 1) / MILLI;
+        }
+
+        /** Return the percentile, interpolated at rank p * (n - 1). */
+        private static double percentile(long[] sorted, double p) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            double rank = p * (sorted.length - 1);
+            int below = (int)rank;
+            int above = Math.min(below + 1, sorted.length - 1);
+            return sorted[below] + (rank - below) * (sorted[above] - sorted[below]);
+        }
+
+        /** Return true if a statistic is within rounding of the exact value. */
+        private static boolean close(long value, double exact) {
+            return Math.abs(value - exact) <= Math.max(1, Math.abs(exact) * 1e-9);
+        }
+
+        /**
+         * Replay the app's refresh loop for the running player until the
+         * given time. Return true if a refresh noticed the flag falling.
+         */
+        private boolean refresh(int player, long until) {
+            long tickTime = now;
+
+            while (true) {
+                long delayLeft = engine.delayNanos();
+                long wait = delayLeft > 0
+                    ? formatter.nanosUntilChange(delayLeft)
+                    : formatter.nanosUntilChange(engine.remainingNanos(player));
+                if (wait == Long.MAX_VALUE) {
+                    wait = 0;
+                }
+
+                tickTime += (wait + MILLI - 1) / MILLI * MILLI + lateness();
+                if (tickTime >= until) {
+                    return false;
+                }
+
+                advance(tickTime);
+                stats.ticks++;
+                check();
+
+                boolean flagged = reference.outOfTime(player, now);
+                if (engine.outOfTime(player) != flagged) {
+                    stats.wrongFlags++;
+                }
+                if (flagged) {
+                    stats.flags++;
+                    stats.maxFlagLatency = Math.max(
+                        stats.maxFlagLatency, now - reference.flagFall());
+                    return true;
+                }
+            }
+        }
+
+        /** Compare the engine to the reference model. */
+        private void check() {
+            for (int player = 1; player <= 2; player++) {
+                drift(engine.remainingNanos(player),
+                      reference.timeLeft(player, now));
+                if (engine.outOfTime(player)
+                        != reference.outOfTime(player, now)) {
+                    stats.wrongFlags++;
+                }
+            }
+            drift(engine.delayNanos(), reference.delayLeft(now));
+
+            int running = reference.running();
+            if (running != 0 && !reference.outOfTime(running, now)
+                    && engine.flagFallNanos() != reference.flagFall()) {
+                stats.flagFallMismatches++;
+            }
+            long flagFell = running != 0 && reference.outOfTime(running, now)
+                ? reference.flagFall()
+                : Long.MAX_VALUE;
+            if (engine.flagFellNanos() != flagFell) {
+                stats.flagFallMismatches++;
+            }
+        }
+
+        private void drift(long actual, long expected) {
+            stats.maxDrift =
+                Math.max(stats.maxDrift, Math.abs(actual - expected));
+        }
+    }
+}
@@ -0,0 +1,47 @@
+/*************************************************************************
+ * File: VirtualTime.java
+ *
+ * A time source driven by the simulator.
+ *
+ * Created: 2026-10-18
+ *
+ * Author: Simen Heggestøyl
+ *
+ *************************************************************************
+ *
+ *   This file is part of Simple Chess Clock (SCC).
+ *
+ *   SCC is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   SCC is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with SCC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *************************************************************************/
+package com.chessclock.bench;
+
+import com.chessclock.core.TimeSource;
+
+/** A time source that only moves when told to. */
+public class VirtualTime implements TimeSource {
+    private long now;
+
+    public VirtualTime(long start) {
+        now = start;
+    }
+
+    public long nanoTime() {
+        return now;
+    }
+
+    public void set(long now) {
+        this.now = now;
+    }
+}
@@ -0,0 +1,184 @@
+/*************************************************************************
+ * File: ClockBroadcaster.java
+ *
+ * Sends the state of the clocks to arbiter screens over UDP.
+ *
+ * Created: 2026-10-18
+ *
+ * Author: Simen Heggestøyl
+ *
+ *************************************************************************
+ *
+ *   This file is part of Simple Chess Clock (SCC).
+ *
+ *   SCC is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   SCC is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with SCC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *************************************************************************/
+package com.chessclock.core;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * Sends ClockFrames to arbiter screens over UDP, usually to a multicast
+ * group. Frames are only published on events (press, pause, flag fall),
+ * and are collected into batches of up to MAX_BATCH frames, one datagram
+ * per batch. A batch is sent when flush is called; the caller decides how
+ * long a frame may wait. The age of every frame is filled in when its
+ * batch is sent, so receivers can tell how old the state is.
+ *
+ * Every broadcaster numbers its frames from 1 under an epoch of its own,
+ * picked at random, so that receivers can tell a sender that started over
+ * (such as an app that was restarted) from old, reordered frames.
+ *
+ * publish may be called on one thread (e.g. the UI thread) and flush on
+ * another (where network access is allowed). Neither allocates.
+ */
+public class ClockBroadcaster {
+    /** Frames per datagram, keeping it within a typical MTU. */
+    public static final int MAX_BATCH = 44;
+
+    private static final long NANOS_PER_MILLI = 1000000;
+
+    private final DatagramSocket socket;
+    private final TimeSource timeSource;
+
+    /** Frames waiting to be sent, and when each was published. */
+    private final ByteBuffer batch =
+        ByteBuffer.allocate(MAX_BATCH * ClockFrame.FRAME_SIZE);
+    private final long[] published = new long[MAX_BATCH];
+    private int batched;
+
+    /** The datagram being sent, only touched with sendLock held. */
+    private final byte[] sending = new byte[batch.capacity()];
+    private final ByteBuffer sendingBuffer = ByteBuffer.wrap(sending);
+    private final DatagramPacket packet;
+    private final Object sendLock = new Object();
+
+    private final int epoch = new Random().nextInt();
+    private int sequence;
+    private long framesSent;
+    private long datagramsSent;
+    private long framesDropped;
+
+    /**
+     * @param socket - the socket to send from
+     * @param destination - where to send the frames, e.g. a multicast group
+     * @param timeSource - to tell the age of the frames by
+     */
+    public ClockBroadcaster(DatagramSocket socket, SocketAddress destination,
+                            TimeSource timeSource) {
+        this.socket = socket;
+        this.timeSource = timeSource;
+        packet = new DatagramPacket(sending, 0);
+        packet.setSocketAddress(destination);
+    }
+
+    /**
+     * Add a frame to the batch, giving it the next sequence number. Return
+     * false if the batch is full, in which case the frame isn't added, and
+     * flush should be called first.
+     */
+    public synchronized boolean publish(ClockFrame frame) {
+        if (batched == MAX_BATCH) {
+            return false;
+        }
+
+        frame.epoch = epoch;
+        frame.sequence = ++sequence;
+        published[batched++] = timeSource.nanoTime();
+        frame.write(batch);
+        return true;
+    }
+
+    /**
+     * Add a frame to the batch like publish, but if the batch is full,
+     * make room by dropping the oldest frame in it. For callers that can't
+     * flush right away: the newest frame, which may be a flag fall, is the
+     * one worth keeping.
+     */
+    public synchronized void publishDroppingOldest(ClockFrame frame) {
+        if (batched == MAX_BATCH) {
+            byte[] frames = batch.array();
+            System.arraycopy(frames, ClockFrame.FRAME_SIZE, frames, 0,
+                             (MAX_BATCH - 1) * ClockFrame.FRAME_SIZE);
+            System.arraycopy(published, 1, published, 0, MAX_BATCH - 1);
+            batched--;
+            batch.position(batched * ClockFrame.FRAME_SIZE);
+            framesDropped++;
+        }
+        publish(frame);
+    }
+
+    public int epoch() {
+        return epoch;
+    }
+
+    /** Return the number of frames waiting to be sent. */
+    public synchronized int batched() {
+        return batched;
+    }
+
+    /** Send the frames waiting, if any, in one datagram. */
+    public void flush() throws IOException {
+        synchronized (sendLock) {
+            int frames;
+            synchronized (this) {
+                frames = batched;
+                if (frames == 0) {
+                    return;
+                }
+
+                long now = timeSource.nanoTime();
+                for (int i = 0; i < frames; i++) {
+                    long age = (now - published[i]) / NANOS_PER_MILLI;
+                    batch.putInt((i + 1) * ClockFrame.FRAME_SIZE - 4,
+                                 (int)Math.min(age, Integer.MAX_VALUE));
+                }
+
+                batch.flip();
+                sendingBuffer.clear();
+                sendingBuffer.put(batch);
+                batch.clear();
+                batched = 0;
+            }
+
+            packet.setData(sending, 0, frames * ClockFrame.FRAME_SIZE);
+            socket.send(packet);
+            framesSent += frames;
+            datagramsSent++;
+        }
+    }
+
+    public long framesSent() {
+        synchronized (sendLock) {
+            return framesSent;
+        }
+    }
+
+    public long datagramsSent() {
+        synchronized (sendLock) {
+            return datagramsSent;
+        }
+    }
+
+    /** Return the number of frames dropped by publishDroppingOldest. */
+    public synchronized long framesDropped() {
+        return framesDropped;
+    }
+}
@@ -0,0 +1,355 @@
+/*************************************************************************
+ * File: ClockEngine.java
+ *
+ * Keeps track of the time left for both players.
+ *
+ * Created: 2026-10-18
+ *
+ * Author: Simen Heggestøyl
+ *
+ *************************************************************************
+ *
+ *   This file is part of Simple Chess Clock (SCC).
+ *
+ *   SCC is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   SCC is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with SCC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *************************************************************************/
+package com.chessclock.core;
+
+/**
+ * The clock engine keeps the time budget of each player and charges the
+ * running player for the time that has actually passed according to a
+ * monotonic time source.
+ *
+ * Time is never deducted in fixed ticks. Instead, the engine remembers when
+ * the running player's clock was started, and computes the time left from
+ * that instant whenever it's asked. How often (or how late) the display is
+ * refreshed therefore doesn't affect the time charged to the players.
+ *
+ * Players are numbered 1 and 2. Player 0 means that no clock is running.
+ */
+public class ClockEngine {
+
+    private static final long NANOS_PER_MILLI = 1000000;
+
+    private final TimeSource timeSource;
+
+    private TimeControl control;
+
+    /** Moves completed per player. */
+    private final int[] moves = new int[3];
+
+    /** Time left per player, as of turnStart, in nanoseconds. */
+    private final long[] remaining = new long[3];
+
+    /** Bronstein delay left for the running player, as of turnStart. */
+    private long delayLeft;
+
+    /**
+     * When the running player's clock was (re)started, or the clocks were
+     * last settled.
+     */
+    private long turnStart;
+
+    /** Time spent on the current turn, as of turnStart, not counting pauses. */
+    private long turnTime;
+
+    /**
+     * When the running player's flag fell, once the clocks have been settled
+     * past it.
+     */
+    private long flagFell;
+
+    private final MoveLog moveLog = new MoveLog();
+
+    private int onTheClock = 0;
+    private int savedOTC = 0;
+
+    public ClockEngine(TimeSource timeSource) {
+        this.timeSource = timeSource;
+    }
+
+    /** Reset the clocks for a new game with the given time control. */
+    public void setUp(TimeControl control) {
+        this.control = control;
+        for (int player = 1; player <= 2; player++) {
+            remaining[player] = control.initialTime(player) * NANOS_PER_MILLI;
+            moves[player] = 0;
+        }
+        delayLeft = control.bronsteinDelay(1) * NANOS_PER_MILLI;
+        turnStart = timeSource.nanoTime();
+        flagFell = Long.MAX_VALUE;
+        onTheClock = 0;
+        savedOTC = 0;
+        moveLog.clear();
+    }
+
+    public TimeControl timeControl() {
+        return control;
+    }
+
+    /** Return the log of the moves completed in this game. */
+    public MoveLog moveLog() {
+        return moveLog;
+    }
+
+    /** Return the number of moves the given player has completed. */
+    public int moves(int player) {
+        return moves[player];
+    }
+
+    /** Return the player whose clock is running, or 0 if none is. */
+    public int onTheClock() {
+        return onTheClock;
+    }
+
+    /** Return the player whose clock was running when paused, or 0. */
+    public int savedOTC() {
+        return savedOTC;
+    }
+
+    /** Return the opponent of the given player. */
+    public static int opponent(int player) {
+        return 3 - player;
+    }
+
+    /**
+     * Register that the given player pressed their clock now, starting the
+     * opponent's clock. Return false if the press was ignored because the
+     * opponent's clock is already running, or the flag has fallen.
+     */
+    public boolean press(int player) {
+        return press(player, timeSource.nanoTime());
+    }
+
+    /**
+     * Register that the given player pressed their clock at the given
+     * instant (from the engine's time source), which may have passed
+     * already. The player is charged up to that instant and the opponent
+     * from it, however late the press is handled. It's limited to the
+     * range from the last press or pause until now, so that time is never
+     * charged twice or ahead of time.
+     */
+    public boolean press(int player, long when) {
+        int opponent = opponent(player);
+
+        if (onTheClock == opponent) {
+            return false;
+        }
+
+        long now = Math.max(turnStart,
+                            Math.min(when, timeSource.nanoTime()));
+        settle(now);
+
+        // The flag fell before the press, the display just didn't show it yet
+        if (onTheClock != 0 && remaining[onTheClock] == 0 && delayLeft == 0) {
+            return false;
+        }
+
+        // The player completed a move, unless they're just starting the game
+        // or unpausing the opponent
+        if (onTheClock == player || savedOTC == player) {
+            moves[player]++;
+            remaining[player] = control.afterMove(
+                player, moves[player], remaining[player]);
+            moveLog.add(player, turnTime, remaining[player]);
+        }
+
+        // Unless we're unpausing the opponent, start a fresh turn
+        if (savedOTC != opponent) {
+            delayLeft = control.bronsteinDelay(opponent) * NANOS_PER_MILLI;
+            turnTime = 0;
+        }
+
+        onTheClock = opponent;
+        savedOTC = 0;
+        turnStart = now;
+        // A clock started with no time and no delay left is flagged as
+        // soon as it starts
+        if (remaining[opponent] + delayLeft == 0) {
+            flagFell = now;
+        }
+        return true;
+    }
+
+    /** Pause the running clock, if any. */
+    public void pause() {
+        if (onTheClock != 0) {
+            settle(timeSource.nanoTime());
+            savedOTC = onTheClock;
+            onTheClock = 0;
+        }
+    }
+
+    /** Fill in the given state with the state of the clocks as of now. */
+    public void save(ClockState state) {
+        long now = timeSource.nanoTime();
+        settle(now);
+
+        state.time = now;
+        state.onTheClock = onTheClock;
+        state.savedOTC = savedOTC;
+        for (int player = 1; player <= 2; player++) {
+            state.moves[player] = moves[player];
+            state.remaining[player] = remaining[player];
+        }
+        state.delayLeft = delayLeft;
+        state.turnTime = turnTime;
+        state.flagFell = flagFell;
+    }
+
+    /**
+     * Continue a game from a saved state, with the current time control.
+     * A clock that was running when the state was saved has kept running
+     * since, and is charged for that time. If the time source has been
+     * reset since then (the device rebooted), the time in between is
+     * unknown, and the game is resumed paused instead.
+     *
+     * The time source alone only shows a reset while it's still behind the
+     * saved time, so the caller tells whether the state is from the time
+     * source's current run.
+     * @param state - the saved state
+     * @param sameRun - false if the time source has been reset since the
+     * state was saved
+     */
+    public void restore(ClockState state, boolean sameRun) {
+        long now = timeSource.nanoTime();
+
+        onTheClock = state.onTheClock;
+        savedOTC = state.savedOTC;
+        for (int player = 1; player <= 2; player++) {
+            moves[player] = state.moves[player];
+            remaining[player] = state.remaining[player];
+        }
+        delayLeft = state.delayLeft;
+        turnTime = state.turnTime;
+        turnStart = state.time;
+        flagFell = state.flagFell;
+
+        if (!sameRun || state.time > now) {
+            if (onTheClock != 0) {
+                savedOTC = onTheClock;
+                onTheClock = 0;
+            }
+            turnStart = now;
+        }
+    }
+
+    /**
+     * Charge the running player for the time passed since turnStart, and
+     * move turnStart up to now.
+     */
+    private void settle(long now) {
+        if (onTheClock == 0) {
+            return;
+        }
+
+        long elapsed = now - turnStart;
+        long left = delayLeft + remaining[onTheClock];
+        if (left > 0 && elapsed >= left) {
+            flagFell = turnStart + left;
+        }
+        turnTime += elapsed;
+        long fromDelay = Math.min(elapsed, delayLeft);
+        delayLeft -= fromDelay;
+        remaining[onTheClock] =
+            Math.max(0, remaining[onTheClock] - (elapsed - fromDelay));
+        turnStart = now;
+    }
+
+    /** Return the time left for the given player, in nanoseconds. */
+    public long remainingNanos(int player) {
+        if (player != onTheClock) {
+            return remaining[player];
+        }
+
+        long elapsed = timeSource.nanoTime() - turnStart;
+        return Math.max(0, remaining[player] - Math.max(0, elapsed - delayLeft));
+    }
+
+    /**
+     * Return the Bronstein delay left for the running (or paused) player, in
+     * nanoseconds.
+     */
+    public long delayNanos() {
+        if (onTheClock == 0) {
+            return delayLeft;
+        }
+
+        long elapsed = timeSource.nanoTime() - turnStart;
+        return Math.max(0, delayLeft - elapsed);
+    }
+
+    /** Return the time left for the given player, in milliseconds. */
+    public long remaining(int player) {
+        return toMillis(remainingNanos(player));
+    }
+
+    /**
+     * Return the Bronstein delay left for the running (or paused) player, in
+     * milliseconds.
+     */
+    public long delay() {
+        return toMillis(delayNanos());
+    }
+
+    /**
+     * Return true if the given player is out of time: they have no time
+     * left, and no Bronstein delay either. A player who starts with no time
+     * in a Bronstein game still has the delay of every turn, so the delay
+     * that player has left, or gets on their next turn, counts too.
+     */
+    public boolean outOfTime(int player) {
+        if (remainingNanos(player) > 0) {
+            return false;
+        }
+
+        if (player == onTheClock || player == savedOTC) {
+            return delayNanos() == 0;
+        }
+        return control.bronsteinDelay(player) == 0;
+    }
+
+    /**
+     * Return the instant the running player's flag falls, or
+     * Long.MAX_VALUE if no clock is running.
+     */
+    public long flagFallNanos() {
+        if (onTheClock == 0) {
+            return Long.MAX_VALUE;
+        }
+
+        return turnStart + delayLeft + remaining[onTheClock];
+    }
+
+    /**
+     * Return the instant the running player's flag fell, or Long.MAX_VALUE
+     * if it hasn't.
+     */
+    public long flagFellNanos() {
+        if (onTheClock == 0 || !outOfTime(onTheClock)) {
+            return Long.MAX_VALUE;
+        }
+        if (remaining[onTheClock] == 0 && delayLeft == 0) {
+            return flagFell;
+        }
+
+        return flagFallNanos();
+    }
+
+    /** Round nanoseconds up to whole milliseconds. */
+    private static long toMillis(long nanos) {
+        return (nanos + NANOS_PER_MILLI - 1) / NANOS_PER_MILLI;
+    }
+}
@@ -0,0 +1,147 @@
+/*************************************************************************
+ * File: ClockFrame.java
+ *
+ * The binary frame carrying the state of a board's clocks.
+ *
+ * Created: 2026-10-18
+ *
+ * Author: Simen Heggestøyl
+ *
+ *************************************************************************
+ *
+ *   This file is part of Simple Chess Clock (SCC).
+ *
+ *   SCC is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   SCC is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with SCC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *************************************************************************/
+package com.chessclock.core;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The state of one board's clocks as broadcast to arbiter screens, and its
+ * fixed-size binary encoding. A frame is sent whenever a clock is pressed,
+ * paused or runs out, and carries the state as of that event; receivers
+ * run the clock on from there themselves.
+ *
+ * The encoding is FRAME_SIZE bytes, big endian:
+ *
+ *   0  int    board number
+ *   4  int    sender epoch, random for every ClockBroadcaster
+ *   8  int    sequence number, increasing per sender from 1
+ *  12  byte   version (VERSION)
+ *  13  byte   bits 0-1: player on the clock (0 if stopped), bit 2: time up
+ *  14  short  moves completed by both players (unsigned)
+ *  16  int    player 1's time left, in milliseconds
+ *  20  int    player 2's time left, in milliseconds
+ *  24  int    Bronstein delay left, in milliseconds
+ *  28  int    age of the frame when sent, in milliseconds
+ *
+ * The sequence starts over whenever the sending app does, so it only
+ * orders the frames of one epoch.
+ *
+ * Frames are reused rather than allocated for every event.
+ */
+public class ClockFrame {
+    public static final int FRAME_SIZE = 32;
+    public static final byte VERSION = 2;
+
+    private static final int TIME_UP = 4;
+    private static final long NANOS_PER_MILLI = 1000000;
+
+    public int board;
+    public int epoch;
+    public int sequence;
+    public int onTheClock;
+    public boolean timeUp;
+    public int moves;
+    public final long[] remaining = new long[3];
+    public long delay;
+
+    /** How long ago (in milliseconds) the state was current. */
+    public int age;
+
+    /** Fill in the frame with the state of an engine's clocks as of now. */
+    public void set(int board, ClockEngine engine) {
+        this.board = board;
+        onTheClock = engine.onTheClock();
+        moves = engine.moves(1) + engine.moves(2);
+        for (int player = 1; player <= 2; player++) {
+            remaining[player] = engine.remaining(player);
+        }
+        delay = engine.delay();
+        timeUp = engine.outOfTime(1) || engine.outOfTime(2);
+        age = 0;
+    }
+
+    /** Fill in the frame with the state of a registry game as of now. */
+    public void set(int board, ClockRegistry registry, int game) {
+        this.board = board;
+        onTheClock = registry.onTheClock(game);
+        moves = registry.moves(game, 1) + registry.moves(game, 2);
+        for (int player = 1; player <= 2; player++) {
+            remaining[player] =
+                toMillis(registry.remainingNanos(game, player));
+        }
+        delay = toMillis(registry.delayNanos(game));
+        timeUp = registry.outOfTime(game, 1) || registry.outOfTime(game, 2);
+        age = 0;
+    }
+
+    /** Write the frame at the buffer's position, moving it past the frame. */
+    public void write(ByteBuffer out) {
+        out.putInt(board);
+        out.putInt(epoch);
+        out.putInt(sequence);
+        out.put(VERSION);
+        out.put((byte)(onTheClock | (timeUp ? TIME_UP : 0)));
+        out.putShort((short)Math.min(moves, 0xffff));
+        out.putInt(toInt(remaining[1]));
+        out.putInt(toInt(remaining[2]));
+        out.putInt(toInt(delay));
+        out.putInt(age);
+    }
+
+    /**
+     * Read a frame at the buffer's position, moving it past the frame.
+     * Return false, leaving the frame in an undefined state, if it's not a
+     * frame of this version.
+     */
+    public boolean read(ByteBuffer in) {
+        board = in.getInt();
+        epoch = in.getInt();
+        sequence = in.getInt();
+        byte version = in.get();
+        int state = in.get();
+        moves = in.getShort() & 0xffff;
+        remaining[1] = in.getInt();
+        remaining[2] = in.getInt();
+        delay = in.getInt();
+        age = in.getInt();
+
+        onTheClock = state & 3;
+        timeUp = (state & TIME_UP) != 0;
+        return version == VERSION && onTheClock != 3 && board >= 0
+            && remaining[1] >= 0 && remaining[2] >= 0 && delay >= 0
+            && age >= 0;
+    }
+
+    private static int toInt(long value) {
+        return (int)Math.min(value, Integer.MAX_VALUE);
+    }
+
+    private static long toMillis(long nanos) {
+        return (nanos + NANOS_PER_MILLI - 1) / NANOS_PER_MILLI;
+    }
+}
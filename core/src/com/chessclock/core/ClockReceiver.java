@@ -0,0 +1,195 @@
+/*************************************************************************
+ * File: ClockReceiver.java
+ *
+ * Rebuilds the clocks of a hall of boards from broadcast frames.
+ *
+ * Created: 2026-10-18
+ *
+ * Author: Simen Heggestøyl
+ *
+ *************************************************************************
+ *
+ *   This file is part of Simple Chess Clock (SCC).
+ *
+ *   SCC is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   SCC is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with SCC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *************************************************************************/
+package com.chessclock.core;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.nio.ByteBuffer;
+
+/**
+ * Rebuilds the clocks of a hall of boards from the ClockFrames sent by
+ * ClockBroadcasters, for an arbiter screen. Boards are numbered from 0 up
+ * to the capacity given; frames for other boards are ignored, as are
+ * frames older than the last one taken in for their board (datagrams may
+ * be reordered). A frame from another sender epoch than the last one is
+ * always taken in, and its sequence followed from there on, since the
+ * sender has started over.
+ *
+ * Between frames the running clock is run on locally: a frame says how
+ * much time was left when it was current (its arrival less its age), and
+ * the time passed since then is charged as the engine would, first from
+ * the Bronstein delay. The clocks shown are therefore as accurate as the
+ * frames' ages, whatever the frame rate.
+ *
+ * receive is meant to run on its own thread, and the getters may be called
+ * from any thread.
+ */
+public class ClockReceiver {
+    private static final long NANOS_PER_MILLI = 1000000;
+
+    private final TimeSource timeSource;
+    private final int capacity;
+
+    /** Per board. */
+    private final int[] epoch;
+    private final int[] sequence;
+    private final byte[] onTheClock;
+    private final boolean[] timeUp;
+    private final boolean[] seen;
+    private final int[] moves;
+    private final long[] delay;
+    private final long[] since;
+
+    /** Per board and player, at index board * 2 + player - 1. */
+    private final long[] remaining;
+
+    private final byte[] data =
+        new byte[ClockBroadcaster.MAX_BATCH * ClockFrame.FRAME_SIZE];
+    private final ByteBuffer buffer = ByteBuffer.wrap(data);
+    private final DatagramPacket packet =
+        new DatagramPacket(data, data.length);
+    private final ClockFrame frame = new ClockFrame();
+
+    private long framesReceived;
+    private long framesDropped;
+
+    public ClockReceiver(TimeSource timeSource, int capacity) {
+        this.timeSource = timeSource;
+        this.capacity = capacity;
+        epoch = new int[capacity];
+        sequence = new int[capacity];
+        onTheClock = new byte[capacity];
+        timeUp = new boolean[capacity];
+        seen = new boolean[capacity];
+        moves = new int[capacity];
+        delay = new long[capacity];
+        since = new long[capacity];
+        remaining = new long[capacity * 2];
+    }
+
+    /**
+     * Wait for a datagram on the given socket, and take in the frames in
+     * it. Return the number of frames taken in.
+     */
+    public int receive(DatagramSocket socket) throws IOException {
+        packet.setData(data, 0, data.length);
+        socket.receive(packet);
+        long now = timeSource.nanoTime();
+
+        buffer.clear();
+        buffer.limit(packet.getLength());
+        int taken = 0;
+
+        synchronized (this) {
+            while (buffer.remaining() >= ClockFrame.FRAME_SIZE) {
+                if (take(now)) {
+                    taken++;
+                } else {
+                    framesDropped++;
+                }
+            }
+            framesReceived += taken;
+        }
+
+        return taken;
+    }
+
+    private boolean take(long now) {
+        if (!frame.read(buffer) || frame.board >= capacity) {
+            return false;
+        }
+
+        int board = frame.board;
+        // Sequence numbers may wrap around, so compare their difference
+        if (seen[board] && frame.epoch == epoch[board]
+                && frame.sequence - sequence[board] <= 0) {
+            return false;
+        }
+
+        seen[board] = true;
+        epoch[board] = frame.epoch;
+        sequence[board] = frame.sequence;
+        onTheClock[board] = (byte)frame.onTheClock;
+        timeUp[board] = frame.timeUp;
+        moves[board] = frame.moves;
+        remaining[board * 2] = frame.remaining[1] * NANOS_PER_MILLI;
+        remaining[board * 2 + 1] = frame.remaining[2] * NANOS_PER_MILLI;
+        delay[board] = frame.delay * NANOS_PER_MILLI;
+        since[board] = now - frame.age * NANOS_PER_MILLI;
+        return true;
+    }
+
+    /** Return true if a frame has been taken in for the given board. */
+    public synchronized boolean seen(int board) {
+        return seen[board];
+    }
+
+    public synchronized int onTheClock(int board) {
+        return onTheClock[board];
+    }
+
+    public synchronized boolean timeUp(int board) {
+        return timeUp[board];
+    }
+
+    /** Return the moves completed by both players on the given board. */
+    public synchronized int moves(int board) {
+        return moves[board];
+    }
+
+    /** Return the time left for the given player as of now, in nanoseconds. */
+    public synchronized long remainingNanos(int board, int player) {
+        long left = remaining[board * 2 + player - 1];
+        if (player != onTheClock[board]) {
+            return left;
+        }
+
+        long elapsed = timeSource.nanoTime() - since[board];
+        return Math.max(0, left - Math.max(0, elapsed - delay[board]));
+    }
+
+    /** Return the Bronstein delay left on the given board, in nanoseconds. */
+    public synchronized long delayNanos(int board) {
+        if (onTheClock[board] == 0) {
+            return delay[board];
+        }
+
+        long elapsed = timeSource.nanoTime() - since[board];
+        return Math.max(0, delay[board] - elapsed);
+    }
+
+    public synchronized long framesReceived() {
+        return framesReceived;
+    }
+
+    /** Return the number of frames ignored as invalid or out of order. */
+    public synchronized long framesDropped() {
+        return framesDropped;
+    }
+}
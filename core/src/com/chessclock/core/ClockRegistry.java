@@ -0,0 +1,331 @@
+/*************************************************************************
+ * File: ClockRegistry.java
+ *
+ * Keeps the clocks of many games, for a tournament hall.
+ *
+ * Created: 2026-10-18
+ *
+ * Author: Simen Heggestøyl
+ *
+ *************************************************************************
+ *
+ *   This file is part of Simple Chess Clock (SCC).
+ *
+ *   SCC is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   SCC is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with SCC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *************************************************************************/
+package com.chessclock.core;
+
+/**
+ * Keeps the clocks of many independent games at once, e.g. for every board
+ * of a tournament hall. The clocks follow the same rules as ClockEngine,
+ * but the state of all games is kept in a few flat arrays indexed by game
+ * number rather than in an object per game, and the flag falls are found
+ * with one TimingWheel rather than a timer per game.
+ *
+ * Pressing, pausing and reading a clock take constant time, and nothing is
+ * allocated after construction. A game takes about 70 bytes.
+ *
+ * Games are numbered from 0, and their players 1 and 2 as in ClockEngine.
+ * The registry isn't thread safe.
+ */
+public class ClockRegistry {
+
+    /** Notified of the flag falls found by poll. */
+    public interface FlagListener {
+        void flagFell(int game, int player);
+    }
+
+    private static final long NANOS_PER_MILLI = 1000000;
+    private static final int NONE = -1;
+
+    private final TimeSource timeSource;
+    private final TimingWheel wheel;
+    private final int capacity;
+    private int size;
+
+    /** Per game. */
+    private final TimeControl[] control;
+    private final long[] turnStart;
+    private final long[] delayLeft;
+    private final byte[] onTheClock;
+    private final byte[] savedOTC;
+    private final boolean[] inUse;
+
+    /** Per game and player, at index game * 2 + player - 1. */
+    private final long[] remaining;
+    private final int[] moves;
+
+    /** Next free game number after each free game, and the first. */
+    private final int[] nextFree;
+    private int firstFree;
+
+    private FlagListener flagListener;
+
+    private final TimingWheel.Listener expiry = new TimingWheel.Listener() {
+            public void expired(int game) {
+                flagFallDue(game);
+            }
+        };
+
+    /**
+     * Create a registry with room for the given number of games. The flag
+     * falls are found to within the given resolution (in nanoseconds).
+     */
+    public ClockRegistry(TimeSource timeSource, int capacity,
+                         long resolution) {
+        this.timeSource = timeSource;
+        this.capacity = capacity;
+        wheel = new TimingWheel(capacity, resolution, timeSource.nanoTime());
+
+        control = new TimeControl[capacity];
+        turnStart = new long[capacity];
+        delayLeft = new long[capacity];
+        onTheClock = new byte[capacity];
+        savedOTC = new byte[capacity];
+        inUse = new boolean[capacity];
+        remaining = new long[capacity * 2];
+        moves = new int[capacity * 2];
+
+        nextFree = new int[capacity];
+        for (int game = 0; game < capacity; game++) {
+            nextFree[game] = game + 1 < capacity ? game + 1 : NONE;
+        }
+        firstFree = capacity > 0 ? 0 : NONE;
+    }
+
+    /** Return the number of games in the registry. */
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Add a game with the given time control, with the clocks set up and
+     * stopped. Return its number.
+     * @throws IllegalStateException if the registry is full
+     */
+    public int add(TimeControl timeControl) {
+        if (firstFree == NONE) {
+            throw new IllegalStateException("Clock registry is full");
+        }
+
+        int game = firstFree;
+        firstFree = nextFree[game];
+        inUse[game] = true;
+        size++;
+        setUp(game, timeControl);
+        return game;
+    }
+
+    /** Remove a game, making its number free for another. */
+    public void remove(int game) {
+        checkGame(game);
+        wheel.cancel(game);
+        control[game] = null;
+        inUse[game] = false;
+        nextFree[game] = firstFree;
+        firstFree = game;
+        size--;
+    }
+
+    /** Reset a game's clocks for a new game with the given time control. */
+    public void setUp(int game, TimeControl timeControl) {
+        checkGame(game);
+        control[game] = timeControl;
+        for (int player = 1; player <= 2; player++) {
+            int i = index(game, player);
+            remaining[i] = timeControl.initialTime(player) * NANOS_PER_MILLI;
+            moves[i] = 0;
+        }
+        delayLeft[game] = timeControl.bronsteinDelay(1) * NANOS_PER_MILLI;
+        turnStart[game] = timeSource.nanoTime();
+        onTheClock[game] = 0;
+        savedOTC[game] = 0;
+        wheel.cancel(game);
+    }
+
+    public boolean press(int game, int player) {
+        return press(game, player, timeSource.nanoTime());
+    }
+
+    /**
+     * Register that the given player of the given game pressed their clock
+     * at the given instant, as in ClockEngine.press. Return false if the
+     * press was ignored.
+     */
+    public boolean press(int game, int player, long when) {
+        checkGame(game);
+        int opponent = ClockEngine.opponent(player);
+
+        if (onTheClock[game] == opponent) {
+            return false;
+        }
+
+        long now = Math.max(turnStart[game],
+                            Math.min(when, timeSource.nanoTime()));
+        settle(game, now);
+
+        int running = onTheClock[game];
+        if (running != 0 && remaining[index(game, running)] == 0
+                && delayLeft[game] == 0) {
+            return false;
+        }
+
+        if (running == player || savedOTC[game] == player) {
+            int i = index(game, player);
+            moves[i]++;
+            remaining[i] = control[game].afterMove(
+                player, moves[i], remaining[i]);
+        }
+
+        if (savedOTC[game] != opponent) {
+            delayLeft[game] =
+                control[game].bronsteinDelay(opponent) * NANOS_PER_MILLI;
+        }
+
+        onTheClock[game] = (byte)opponent;
+        savedOTC[game] = 0;
+        turnStart[game] = now;
+        wheel.schedule(game, flagFallNanos(game));
+        return true;
+    }
+
+    /** Pause the running clock of the given game, if any. */
+    public void pause(int game) {
+        checkGame(game);
+        if (onTheClock[game] != 0) {
+            settle(game, timeSource.nanoTime());
+            savedOTC[game] = onTheClock[game];
+            onTheClock[game] = 0;
+            wheel.cancel(game);
+        }
+    }
+
+    /**
+     * Tell the given listener about the flags that have fallen since the
+     * last poll. Each flag fall is reported once, no earlier than it
+     * happens, and at most the resolution late if polled often enough.
+     */
+    public void poll(FlagListener listener) {
+        flagListener = listener;
+        wheel.advance(timeSource.nanoTime(), expiry);
+        flagListener = null;
+    }
+
+    private void flagFallDue(int game) {
+        int player = onTheClock[game];
+        if (outOfTime(game, player)) {
+            flagListener.flagFell(game, player);
+        } else {
+            // Can't happen as long as the time source is monotonic
+            wheel.schedule(game, flagFallNanos(game));
+        }
+    }
+
+    /** Return the player whose clock is running in the given game, or 0. */
+    public int onTheClock(int game) {
+        return onTheClock[game];
+    }
+
+    public int savedOTC(int game) {
+        return savedOTC[game];
+    }
+
+    public int moves(int game, int player) {
+        return moves[index(game, player)];
+    }
+
+    public TimeControl timeControl(int game) {
+        return control[game];
+    }
+
+    /** Return the time left for the given player, in nanoseconds. */
+    public long remainingNanos(int game, int player) {
+        long left = remaining[index(game, player)];
+        if (player != onTheClock[game]) {
+            return left;
+        }
+
+        long elapsed = timeSource.nanoTime() - turnStart[game];
+        return Math.max(0, left - Math.max(0, elapsed - delayLeft[game]));
+    }
+
+    /** Return the Bronstein delay left in the given game, in nanoseconds. */
+    public long delayNanos(int game) {
+        if (onTheClock[game] == 0) {
+            return delayLeft[game];
+        }
+
+        long elapsed = timeSource.nanoTime() - turnStart[game];
+        return Math.max(0, delayLeft[game] - elapsed);
+    }
+
+    /**
+     * Return true if the given player is out of both time and Bronstein
+     * delay, counting the delay of their next turn if it isn't their turn,
+     * as ClockEngine.outOfTime().
+     */
+    public boolean outOfTime(int game, int player) {
+        if (remainingNanos(game, player) > 0) {
+            return false;
+        }
+
+        if (player == onTheClock[game] || player == savedOTC[game]) {
+            return delayNanos(game) == 0;
+        }
+        return control[game].bronsteinDelay(player) == 0;
+    }
+
+    /**
+     * Return the instant the running player's flag falls in the given game,
+     * or Long.MAX_VALUE if no clock is running.
+     */
+    public long flagFallNanos(int game) {
+        int running = onTheClock[game];
+        if (running == 0) {
+            return Long.MAX_VALUE;
+        }
+
+        return turnStart[game] + delayLeft[game]
+            + remaining[index(game, running)];
+    }
+
+    private void settle(int game, long now) {
+        int running = onTheClock[game];
+        if (running == 0) {
+            return;
+        }
+
+        int i = index(game, running);
+        long elapsed = now - turnStart[game];
+        long fromDelay = Math.min(elapsed, delayLeft[game]);
+        delayLeft[game] -= fromDelay;
+        remaining[i] = Math.max(0, remaining[i] - (elapsed - fromDelay));
+        turnStart[game] = now;
+    }
+
+    private void checkGame(int game) {
+        if (game < 0 || game >= capacity || !inUse[game]) {
+            throw new IllegalArgumentException("No such game: " + game);
+        }
+    }
+
+    private static int index(int game, int player) {
+        return game * 2 + player - 1;
+    }
+}
@@ -0,0 +1,55 @@
+/*************************************************************************
+ * File: ClockState.java
+ *
+ * A snapshot of the clocks, for saving and restoring a game.
+ *
+ * Created: 2026-10-18
+ *
+ * Author: Simen Heggestøyl
+ *
+ *************************************************************************
+ *
+ *   This file is part of Simple Chess Clock (SCC).
+ *
+ *   SCC is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   SCC is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with SCC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *************************************************************************/
+package com.chessclock.core;
+
+/**
+ * A snapshot of the clock engine's state, as of a point in time. It's
+ * mutable so that the same instance can be filled in again and again
+ * without allocating.
+ *
+ * Times are in nanoseconds. Arrays are indexed by player number.
+ */
+public class ClockState {
+    /** When the snapshot was taken, according to the engine's time source. */
+    public long time;
+
+    public int onTheClock;
+    public int savedOTC;
+
+    public final int[] moves = new int[3];
+    public final long[] remaining = new long[3];
+
+    /** Bronstein delay left for the running (or paused) player. */
+    public long delayLeft;
+
+    /** Time spent on the current turn, not counting pauses. */
+    public long turnTime;
+
+    /** When the running player's flag fell, once the clocks were past it. */
+    public long flagFell;
+}
@@ -0,0 +1,106 @@
+/*************************************************************************
+ * File: DelayType.java
+ *
+ * The time delay schemes.
+ *
+ * Created: 2026-10-18
+ *
+ * Author: Simen Heggestøyl
+ *
+ *************************************************************************
+ *
+ *   This file is part of Simple Chess Clock (SCC).
+ *
+ *   SCC is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   SCC is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with SCC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *************************************************************************/
+package com.chessclock.core;
+
+/**
+ * The time delay schemes, each knowing how to apply its delay or increment.
+ * The preference values (as stored by the "Delay Type" preference) are only
+ * looked at when a game is set up.
+ */
+public enum DelayType {
+    NO_DELAY("None"),
+
+    FISCHER("Fischer") {
+        @Override
+        long afterMove(long timeLeft, long delay, long cap) {
+            return timeLeft + delay;
+        }
+
+        @Override
+        long increment(long delay) {
+            return delay;
+        }
+    },
+
+    CAPPED_FISCHER("Capped Fischer") {
+        @Override
+        long afterMove(long timeLeft, long delay, long cap) {
+            return Math.min(timeLeft + delay, cap);
+        }
+
+        @Override
+        long increment(long delay) {
+            return delay;
+        }
+    },
+
+    BRONSTEIN("Bronstein") {
+        @Override
+        long bronsteinDelay(long delay) {
+            return delay;
+        }
+    };
+
+    /** The value stored by the "Delay Type" preference. */
+    public final String prefValue;
+
+    DelayType(String prefValue) {
+        this.prefValue = prefValue;
+    }
+
+    /**
+     * Return the player's time left after completing a move.
+     * @param timeLeft - time left when the move was completed
+     * @param delay - the delay or increment
+     * @param cap - the most time a player may have after an increment
+     */
+    long afterMove(long timeLeft, long delay, long cap) {
+        return timeLeft;
+    }
+
+    /** Return the Bronstein delay given for each move. */
+    long bronsteinDelay(long delay) {
+        return 0;
+    }
+
+    /** Return the increment given for each move. */
+    long increment(long delay) {
+        return 0;
+    }
+
+    /** Return the delay type stored as the given preference value. */
+    public static DelayType fromPrefValue(String prefValue) {
+        for (DelayType type : values()) {
+            if (type.prefValue.equals(prefValue)) {
+                return type;
+            }
+        }
+
+        throw new java.lang.RuntimeException("Invalid delay: " + prefValue);
+    }
+}
@@ -0,0 +1,381 @@
+/*************************************************************************
+ * File: GameJournal.java
+ *
+ * Saves the running game to a file as it goes, so that it can be recovered.
+ *
+ * Created: 2026-10-18
+ *
+ * Author: Simen Heggestøyl
+ *
+ *************************************************************************
+ *
+ *   This file is part of Simple Chess Clock (SCC).
+ *
+ *   SCC is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   SCC is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with SCC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *************************************************************************/
+package com.chessclock.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Keeps the running game in a file, so that it survives the process being
+ * killed or crashing.
+ *
+ * The journal is an append-only sequence of fixed-size records in a memory
+ * mapped file: a state record with a snapshot of the clocks after every
+ * press and pause, preceded by a move record for every move completed
+ * since the last one. Writing a record only stores to memory, so the
+ * caller never waits for the disk. The kernel owns the mapped pages and
+ * writes them back on its own, even after the process dies.
+ *
+ * When the file is full, it's compacted: it's rewritten from the start with
+ * the current state followed by the moves of the game. Starting a new game
+ * compacts it too. A game with more moves than the file holds makes it
+ * grow, so that the whole move log, and the think time statistics built
+ * from it, can always be recovered. Each compaction starts a new generation
+ * of records, and reading stops at the first record of another generation,
+ * so that records left over from before the compaction are never mistaken
+ * for new ones. A record that was only partly written fails its checksum,
+ * and reading stops there as well.
+ *
+ * Every state record carries a fingerprint of the time control, and a
+ * game is only recovered under the time control it was played with. If the
+ * time control changed in between (say, the process was killed while the
+ * settings were open), the journal is discarded.
+ *
+ * State records also carry the boot the snapshot's time is counted from:
+ * the wall-clock time the engine's time source started. A game journaled
+ * in another boot is resumed paused, since the time passed in between is
+ * unknown. The time source alone can't tell, once the device has been up
+ * longer than it had been when the snapshot was taken.
+ *
+ * Record layout (80 bytes):
+ *   0  int  checksum of bytes 4 to 79
+ *   4  int  generation
+ *   8  byte type (STATE or MOVE)
+ *   9  byte onTheClock (STATE) or the player who moved (MOVE)
+ *   10 byte savedOTC (STATE)
+ *   12 int  moves by player 1 (STATE)
+ *   16 int  moves by player 2 (STATE)
+ *   20 int  time control fingerprint (STATE)
+ *   24 long time of the snapshot (STATE) or think time (MOVE)
+ *   32 long time left for player 1 (STATE) or clock after the move (MOVE)
+ *   40 long time left for player 2 (STATE)
+ *   48 long Bronstein delay left (STATE)
+ *   56 long time spent on the current turn (STATE)
+ *   64 long boot, in wall-clock milliseconds (STATE)
+ *   72 long when the running player's flag fell (STATE)
+ */
+public class GameJournal {
+
+    private static final int RECORD_SIZE = 80;
+
+    /** Mixed into the checksums, so that older layouts aren't read. */
+    private static final int FORMAT = 2;
+
+    /**
+     * Records in a new file, enough for a 300 move game with many pauses.
+     */
+    private static final int CAPACITY = 2048;
+
+    /** Periods of a time control that are part of its fingerprint. */
+    private static final int MAX_PERIODS = 16;
+
+    private static final long NANOS_PER_MILLI = 1000000;
+
+    /**
+     * How far the boot times of a snapshot and of the journal may differ,
+     * in milliseconds, and still be the same boot. The wall clock may be
+     * adjusted a little in between.
+     */
+    private static final long BOOT_TOLERANCE = 5000;
+
+    private static final byte STATE = 1;
+    private static final byte MOVE = 2;
+
+    private final File file;
+    private final long boot;
+    private MappedByteBuffer buffer;
+
+    /** Records the file holds. */
+    private int capacity;
+
+    /** Reused for every snapshot. */
+    private final ClockState state = new ClockState();
+
+    private int generation = 0;
+
+    /** The slot the next record goes into. */
+    private int next = 0;
+
+    /** How many moves of the game's move log are in the journal. */
+    private int journaledMoves = 0;
+
+    /** The time control fingerprinted last, and its fingerprint. */
+    private TimeControl control;
+    private int controlFingerprint;
+
+    /**
+     * Open the journal in the given file, creating it if needed.
+     * @param file - the journal file
+     * @param boot - when the engines' time source started (for uptime, when
+     * the device booted), in wall-clock milliseconds
+     */
+    public GameJournal(File file, long boot) throws IOException {
+        this.file = file;
+        this.boot = boot;
+        map((int)Math.max(CAPACITY, file.length() / RECORD_SIZE));
+    }
+
+    /** Map the given number of records of the file, growing it if needed. */
+    private void map(int records) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            // The mapping stays valid after the file is closed
+            buffer = raf.getChannel().map(
+                FileChannel.MapMode.READ_WRITE, 0,
+                (long)records * RECORD_SIZE);
+            capacity = records;
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Continue the game in the journal, if there is one. The engine must
+     * already be set up with the game's time control. Its clocks and move
+     * log are restored, and a clock that was running is charged for the
+     * time passed since the last record, unless it's from another boot.
+     * Return false if the journal has no game, or one played with another
+     * time control, leaving the engine as it was.
+     */
+    public boolean recover(ClockEngine engine) {
+        MoveLog log = engine.moveLog();
+        boolean found = false;
+        int fingerprint = 0;
+        long stateBoot = 0;
+        int slot = 0;
+
+        if (valid(0)) {
+            generation = buffer.getInt(4);
+            log.clear();
+
+            for (; slot < capacity && valid(slot)
+                     && buffer.getInt(slot * RECORD_SIZE + 4) == generation;
+                 slot++) {
+                int at = slot * RECORD_SIZE;
+                if (buffer.get(at + 8) == STATE) {
+                    readState(at);
+                    fingerprint = buffer.getInt(at + 20);
+                    stateBoot = buffer.getLong(at + 64);
+                    found = true;
+                } else {
+                    log.add(buffer.get(at + 9), buffer.getLong(at + 24),
+                            buffer.getLong(at + 32));
+                }
+            }
+        }
+
+        if (!found || fingerprint != fingerprint(engine)) {
+            log.clear();
+            return false;
+        }
+
+        engine.restore(state, Math.abs(stateBoot - boot) <= BOOT_TOLERANCE);
+        next = slot;
+        journaledMoves = log.size();
+        return true;
+    }
+
+    /** Record the current state of the game, after a press or pause. */
+    public void record(ClockEngine engine) {
+        MoveLog log = engine.moveLog();
+        engine.save(state);
+        fingerprint(engine);
+
+        if (next + log.size() - journaledMoves + 1 > capacity) {
+            compact(log);
+            return;
+        }
+
+        for (int i = journaledMoves; i < log.size(); i++) {
+            writeMove(next++, log, i);
+        }
+        writeState(next++);
+        journaledMoves = log.size();
+        endAt(next);
+    }
+
+    /** Start the journal over with a new game. */
+    public void reset(ClockEngine engine) {
+        engine.save(state);
+        fingerprint(engine);
+        compact(engine.moveLog());
+    }
+
+    /**
+     * Rewrite the journal as the last snapshot followed by the moves of the
+     * game. If the game has more moves than the journal fits, the file is
+     * grown to twice the size needed. Only if that fails, only the last
+     * moves are kept.
+     */
+    private void compact(MoveLog log) {
+        if (log.size() + 1 > capacity) {
+            try {
+                map(Math.max(capacity, 2 * (log.size() + 1)));
+            } catch (IOException ex) {
+                // Keep going in the file there is
+            }
+        }
+
+        generation++;
+        next = 0;
+        writeState(next++);
+        for (int i = log.first(capacity - 1); i < log.size(); i++) {
+            writeMove(next++, log, i);
+        }
+        journaledMoves = log.size();
+        endAt(next);
+    }
+
+    private void writeState(int slot) {
+        int at = slot * RECORD_SIZE;
+        buffer.putInt(at + 4, generation);
+        buffer.put(at + 8, STATE);
+        buffer.put(at + 9, (byte)state.onTheClock);
+        buffer.put(at + 10, (byte)state.savedOTC);
+        buffer.put(at + 11, (byte)0);
+        buffer.putInt(at + 12, state.moves[1]);
+        buffer.putInt(at + 16, state.moves[2]);
+        buffer.putInt(at + 20, controlFingerprint);
+        buffer.putLong(at + 24, state.time);
+        buffer.putLong(at + 32, state.remaining[1]);
+        buffer.putLong(at + 40, state.remaining[2]);
+        buffer.putLong(at + 48, state.delayLeft);
+        buffer.putLong(at + 56, state.turnTime);
+        buffer.putLong(at + 64, boot);
+        buffer.putLong(at + 72, state.flagFell);
+        buffer.putInt(at, checksum(at));
+    }
+
+    private void readState(int at) {
+        state.onTheClock = buffer.get(at + 9);
+        state.savedOTC = buffer.get(at + 10);
+        state.moves[1] = buffer.getInt(at + 12);
+        state.moves[2] = buffer.getInt(at + 16);
+        state.time = buffer.getLong(at + 24);
+        state.remaining[1] = buffer.getLong(at + 32);
+        state.remaining[2] = buffer.getLong(at + 40);
+        state.delayLeft = buffer.getLong(at + 48);
+        state.turnTime = buffer.getLong(at + 56);
+        state.flagFell = buffer.getLong(at + 72);
+    }
+
+    private void writeMove(int slot, MoveLog log, int index) {
+        int at = slot * RECORD_SIZE;
+        buffer.putInt(at + 4, generation);
+        buffer.put(at + 8, MOVE);
+        buffer.put(at + 9, (byte)log.player(index));
+        buffer.putShort(at + 10, (short)0);
+        buffer.putLong(at + 12, 0);
+        buffer.putInt(at + 20, 0);
+        buffer.putLong(at + 24, log.thinkTime(index));
+        buffer.putLong(at + 32, log.clockAfter(index));
+        buffer.putLong(at + 40, 0);
+        buffer.putLong(at + 48, 0);
+        buffer.putLong(at + 56, 0);
+        buffer.putLong(at + 64, 0);
+        buffer.putLong(at + 72, 0);
+        buffer.putInt(at, checksum(at));
+    }
+
+    /**
+     * Make sure reading stops before the given slot, even if it holds an
+     * old record of the current generation.
+     */
+    private void endAt(int slot) {
+        if (slot < capacity) {
+            buffer.putInt(slot * RECORD_SIZE, ~checksum(slot * RECORD_SIZE));
+        }
+    }
+
+    /**
+     * Return the fingerprint of the engine's time control, computing it if
+     * the time control is new.
+     */
+    private int fingerprint(ClockEngine engine) {
+        if (engine.timeControl() != control) {
+            control = engine.timeControl();
+            controlFingerprint = fingerprint(control);
+        }
+        return controlFingerprint;
+    }
+
+    /**
+     * Return a fingerprint of the given time control, taken from everything
+     * it tells the engine: the starting times, the delays and increments,
+     * and when the periods end and what they add.
+     */
+    static int fingerprint(TimeControl control) {
+        long h = 0xcbf29ce484222325L;
+        for (int player = 1; player <= 2; player++) {
+            long initialTime = control.initialTime(player);
+            h = mix(h, initialTime);
+            h = mix(h, control.bronsteinDelay(player));
+            h = mix(h, control.increment(player));
+            // Tells a capped increment from a full one
+            h = mix(h, control.afterMove(
+                        player, 1, initialTime * NANOS_PER_MILLI));
+
+            int moves = 0;
+            for (int period = 0; period < MAX_PERIODS; period++) {
+                int toGo = control.movesToGo(player, moves);
+                if (toGo == 0) {
+                    break;
+                }
+                moves += toGo;
+                h = mix(h, moves);
+                h = mix(h, control.afterMove(player, moves, 0));
+            }
+        }
+        return (int)(h ^ (h >>> 32));
+    }
+
+    private static long mix(long h, long value) {
+        h = (h ^ value) * 0x100000001b3L;
+        return h ^ (h >>> 29);
+    }
+
+    private boolean valid(int slot) {
+        int at = slot * RECORD_SIZE;
+        byte type = buffer.get(at + 8);
+        return (type == STATE || type == MOVE)
+            && buffer.getInt(at) == checksum(at);
+    }
+
+    /** Return a checksum of the record at the given offset. */
+    private int checksum(int at) {
+        long h = (0xcbf29ce484222325L + FORMAT) ^ buffer.getInt(at + 4);
+        for (int i = 8; i < RECORD_SIZE; i += 8) {
+            h = (h ^ buffer.getLong(at + i)) * 0x100000001b3L;
+            h ^= h >>> 29;
+        }
+        return (int)(h ^ (h >>> 32));
+    }
+}
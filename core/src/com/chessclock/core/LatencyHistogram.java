@@ -0,0 +1,150 @@
+/*************************************************************************
+ * File: LatencyHistogram.java
+ *
+ * Counts latencies in fixed buckets, for percentiles without allocation.
+ *
+ * Created: 2026-10-18
+ *
+ * Author: Simen Heggestøyl
+ *
+ *************************************************************************
+ *
+ *   This file is part of Simple Chess Clock (SCC).
+ *
+ *   SCC is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   SCC is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with SCC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *************************************************************************/
+package com.chessclock.core;
+
+import java.io.IOException;
+
+/**
+ * A histogram of latencies, in the style of HdrHistogram: every power of
+ * two range of values is split into 16 equally wide buckets, so that any
+ * value is counted with a precision of 1/16 (about 6%), whatever its size.
+ * The buckets are a fixed array of counts, and recording a value is a few
+ * arithmetic operations without any allocation.
+ *
+ * Values are in nanoseconds. Negative values are counted as 0.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /** Enough buckets for any positive long. */
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final long[] counts = new long[BUCKETS];
+    private long count = 0;
+    private long max = 0;
+
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+
+        counts[bucket(value)]++;
+        count++;
+        if (value > max) {
+            max = value;
+        }
+    }
+
+    /** Forget all recorded values. */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = 0;
+        }
+        count = 0;
+        max = 0;
+    }
+
+    /** Return the number of values recorded. */
+    public long count() {
+        return count;
+    }
+
+    /** Return the largest value recorded, exactly. */
+    public long max() {
+        return max;
+    }
+
+    /**
+     * Return the value that the given percentage of the recorded values is
+     * at or below, rounded up to the end of its bucket. Return 0 if nothing
+     * has been recorded.
+     */
+    public long percentile(double percent) {
+        long rank = (long)Math.ceil(count * percent / 100);
+        long seen = 0;
+
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank && seen > 0) {
+                return Math.min(highestInBucket(i), max);
+            }
+        }
+
+        return 0;
+    }
+
+    /**
+     * Write the non-empty buckets as CSV lines of the given name, the lowest
+     * and highest value of the bucket and its count.
+     */
+    public void writeCsv(Appendable out, String name) throws IOException {
+        for (int i = 0; i < BUCKETS; i++) {
+            if (counts[i] > 0) {
+                out.append(name).append(',')
+                    .append(Long.toString(lowestInBucket(i))).append(',')
+                    .append(Long.toString(highestInBucket(i))).append(',')
+                    .append(Long.toString(counts[i])).append('\n');
+            }
+        }
+    }
+
+    /**
+     * Return the bucket of a value. Values below SUB_BUCKETS have a bucket
+     * each. Above that, the bucket is given by the position of the highest
+     * bit and the SUB_BUCKET_BITS bits below it.
+     */
+    private static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int)value;
+        }
+
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift << SUB_BUCKET_BITS) + (int)(value >>> shift);
+    }
+
+    private static long lowestInBucket(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+
+        int shift = (bucket >> SUB_BUCKET_BITS) - 1;
+        long top = SUB_BUCKETS + (bucket & (SUB_BUCKETS - 1));
+        return top << shift;
+    }
+
+    private static long highestInBucket(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+
+        int shift = (bucket >> SUB_BUCKET_BITS) - 1;
+        return lowestInBucket(bucket) + (1L << shift) - 1;
+    }
+}
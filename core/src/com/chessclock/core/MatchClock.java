@@ -0,0 +1,143 @@
+/*************************************************************************
+ * File: MatchClock.java
+ *
+ * The clock of an engine-vs-engine game, with UCI time parameters.
+ *
+ * Created: 2026-10-18
+ *
+ * Author: Simen Heggestøyl
+ *
+ *************************************************************************
+ *
+ *   This file is part of Simple Chess Clock (SCC).
+ *
+ *   SCC is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   SCC is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with SCC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *************************************************************************/
+package com.chessclock.core;
+
+/**
+ * The clock of one engine-vs-engine game, for test rigs and other programs
+ * embedding the clock rules without the app. It follows the same rules as
+ * the app (it's a ClockEngine underneath), and tells the engines their
+ * time in the terms of the UCI "go" command.
+ *
+ * Player 1 is White and player 2 Black. All methods are thread safe, and
+ * lock only this game's clock, so games on different threads don't slow
+ * each other down. Playing a game doesn't allocate, apart from the move
+ * log growing in long games.
+ *
+ * UCI has no notion of a Bronstein delay, so it's passed to the engines as
+ * an increment. That's what they get back on every move that takes at
+ * least the delay, and more than they get back on faster moves.
+ */
+public class MatchClock {
+    public static final int WHITE = 1;
+    public static final int BLACK = 2;
+
+    private final ClockEngine engine;
+
+    /** Set up a game with the given time control, not started yet. */
+    public MatchClock(TimeSource timeSource, TimeControl control) {
+        engine = new ClockEngine(timeSource);
+        engine.setUp(control);
+    }
+
+    /** Start a new game, with White's clock running. */
+    public synchronized void start() {
+        engine.setUp(engine.timeControl());
+        engine.press(BLACK);
+    }
+
+    /** Start a new game with another time control. */
+    public synchronized void start(TimeControl control) {
+        engine.setUp(control);
+        engine.press(BLACK);
+    }
+
+    /**
+     * Register that the given player completed a move at the given instant
+     * (from the time source), starting the opponent's clock. Return false
+     * if the press was ignored because it wasn't the player's turn, or the
+     * flag has fallen.
+     */
+    public synchronized boolean press(int player, long eventNanos) {
+        return engine.press(player, eventNanos);
+    }
+
+    /** Return the player to move, or 0 if the game hasn't started. */
+    public synchronized int toMove() {
+        return engine.onTheClock();
+    }
+
+    /** Return the number of moves the given player has completed. */
+    public synchronized int moves(int player) {
+        return engine.moves(player);
+    }
+
+    /** Return the time left for the given player, in milliseconds. */
+    public synchronized long remaining(int player) {
+        return engine.remaining(player);
+    }
+
+    /** Return the time left for the given player, in nanoseconds. */
+    public synchronized long remainingNanos(int player) {
+        return engine.remainingNanos(player);
+    }
+
+    /** Return true if the given player has run out of time. */
+    public synchronized boolean isFlagged(int player) {
+        return engine.outOfTime(player);
+    }
+
+    /**
+     * Return the increment the given player gets for each move, as told to
+     * UCI engines (winc/binc), in milliseconds.
+     */
+    public synchronized long increment(int player) {
+        TimeControl control = engine.timeControl();
+        return control.increment(player) + control.bronsteinDelay(player);
+    }
+
+    /**
+     * Return the moves the player to move has left until time is added
+     * (UCI movestogo), or 0 if no more time is added.
+     */
+    public synchronized int movesToGo() {
+        int player = engine.onTheClock() != 0 ? engine.onTheClock() : WHITE;
+        return engine.timeControl().movesToGo(player, engine.moves(player));
+    }
+
+    /**
+     * Append the UCI "go" command for the player to move, such as "go
+     * wtime 58200 btime 60000 winc 1000 binc 1000", to the given builder.
+     * winc, binc and movestogo are left out when they're 0.
+     */
+    public synchronized void appendGo(StringBuilder out) {
+        out.append("go wtime ").append(engine.remaining(WHITE));
+        out.append(" btime ").append(engine.remaining(BLACK));
+
+        long winc = increment(WHITE);
+        long binc = increment(BLACK);
+        if (winc > 0 || binc > 0) {
+            out.append(" winc ").append(winc);
+            out.append(" binc ").append(binc);
+        }
+
+        int movesToGo = movesToGo();
+        if (movesToGo > 0) {
+            out.append(" movestogo ").append(movesToGo);
+        }
+    }
+}
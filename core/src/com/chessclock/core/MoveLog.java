@@ -0,0 +1,217 @@
+/*************************************************************************
+ * File: MoveLog.java
+ *
+ * Records the time spent on every move, for review after the game.
+ *
+ * Created: 2026-10-18
+ *
+ * Author: Simen Heggestøyl
+ *
+ *************************************************************************
+ *
+ *   This file is part of Simple Chess Clock (SCC).
+ *
+ *   SCC is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   SCC is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with SCC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *************************************************************************/
+package com.chessclock.core;
+
+import java.io.IOException;
+
+/**
+ * Records every completed move: who made it, how long it took and the time
+ * left on their clock afterwards (including any increment).
+ *
+ * The moves are kept in plain arrays indexed by move number, which grow by
+ * doubling as the game goes on. Recording a move allocates nothing except
+ * when the arrays grow, and any move can be read in constant time, so the
+ * last N moves of a game are simply the indexes size() - N to size() - 1.
+ * A move takes 17 bytes, so even a 300 move game needs only a few kilobytes.
+ *
+ * Each player's think time statistics are kept along with the moves, see
+ * stats().
+ *
+ * Times are in nanoseconds.
+ */
+public class MoveLog {
+
+    private static final int INITIAL_CAPACITY = 128;
+    private static final long NANOS_PER_MILLI = 1000000;
+
+    private byte[] players = new byte[INITIAL_CAPACITY];
+    private long[] thinkTimes = new long[INITIAL_CAPACITY];
+    private long[] clocks = new long[INITIAL_CAPACITY];
+    private int size = 0;
+
+    private final ThinkTimeStats stats = new ThinkTimeStats();
+
+    /** Scratch space for writing numbers, so that exporting allocates less. */
+    private final char[] digits = new char[20];
+
+    /** Forget all moves. */
+    public void clear() {
+        size = 0;
+        stats.clear();
+    }
+
+    /** Record a move by the given player. */
+    public void add(int player, long thinkTime, long clockAfter) {
+        if (size == clocks.length) {
+            grow();
+        }
+
+        players[size] = (byte)player;
+        thinkTimes[size] = thinkTime;
+        clocks[size] = clockAfter;
+        size++;
+        stats.add(player, thinkTime);
+    }
+
+    private void grow() {
+        int capacity = clocks.length * 2;
+        byte[] newPlayers = new byte[capacity];
+        long[] newThinkTimes = new long[capacity];
+        long[] newClocks = new long[capacity];
+        System.arraycopy(players, 0, newPlayers, 0, size);
+        System.arraycopy(thinkTimes, 0, newThinkTimes, 0, size);
+        System.arraycopy(clocks, 0, newClocks, 0, size);
+        players = newPlayers;
+        thinkTimes = newThinkTimes;
+        clocks = newClocks;
+    }
+
+    /** Return the think time statistics of the moves recorded. */
+    public ThinkTimeStats stats() {
+        return stats;
+    }
+
+    /** Return the number of moves recorded. */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Return the index of the first of the last n moves, so that they're
+     * found at first(n) up to size() - 1.
+     */
+    public int first(int n) {
+        return Math.max(0, size - n);
+    }
+
+    /** Return the player who made the given move. */
+    public int player(int index) {
+        return players[check(index)];
+    }
+
+    /** Return how long the given move took. */
+    public long thinkTime(int index) {
+        return thinkTimes[check(index)];
+    }
+
+    /** Return the time left on the mover's clock after the given move. */
+    public long clockAfter(int index) {
+        return clocks[check(index)];
+    }
+
+    private int check(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(
+                "Move " + index + " of " + size);
+        }
+        return index;
+    }
+
+    /**
+     * Write the clock after each move as PGN movetext with [%clk] comments,
+     * as in "1. {[%clk 0:04:58]} {[%clk 0:04:57]} 2. ...". The moves
+     * themselves aren't known to the clock, so this is meant to be merged
+     * with the moves of the game. The player who made the first recorded
+     * move is taken to be White. Moves are numbered by who made them, so a
+     * Black move that doesn't follow a White one gets a number of its own,
+     * as in "2... {[%clk 0:04:50]}".
+     */
+    public void writePgn(Appendable out) throws IOException {
+        int white = size > 0 ? players[0] : 1;
+        int number = 0;
+
+        for (int i = 0; i < size; i++) {
+            boolean whiteMove = players[i] == white;
+            if (whiteMove || players[i - 1] != white) {
+                number++;
+                if (i > 0) {
+                    out.append(number % 8 == 1 ? '\n' : ' ');
+                }
+                writeNumber(out, number);
+                out.append(whiteMove ? "." : "...");
+            }
+            out.append(" {[%clk ");
+            writeClk(out, clocks[i]);
+            out.append("]}");
+        }
+        if (size > 0) {
+            out.append('\n');
+        }
+    }
+
+    /**
+     * Write the moves as CSV, one line per move, with times in whole
+     * milliseconds.
+     */
+    public void writeCsv(Appendable out) throws IOException {
+        out.append("move,player,think_ms,clock_ms\n");
+        for (int i = 0; i < size; i++) {
+            writeNumber(out, i + 1);
+            out.append(',');
+            writeNumber(out, players[i]);
+            out.append(',');
+            writeNumber(out, toMillis(thinkTimes[i]));
+            out.append(',');
+            writeNumber(out, toMillis(clocks[i]));
+            out.append('\n');
+        }
+    }
+
+    /** Write a time as h:mm:ss, in whole seconds rounded down. */
+    private void writeClk(Appendable out, long nanos) throws IOException {
+        long seconds = nanos / (1000 * NANOS_PER_MILLI);
+        writeNumber(out, seconds / 3600);
+        out.append(':');
+        writeTwoDigits(out, seconds / 60 % 60);
+        out.append(':');
+        writeTwoDigits(out, seconds % 60);
+    }
+
+    private static void writeTwoDigits(Appendable out, long n)
+        throws IOException {
+        out.append((char)('0' + n / 10));
+        out.append((char)('0' + n % 10));
+    }
+
+    private void writeNumber(Appendable out, long n) throws IOException {
+        int start = digits.length;
+        do {
+            digits[--start] = (char)('0' + n % 10);
+            n /= 10;
+        } while (n > 0);
+
+        for (int i = start; i < digits.length; i++) {
+            out.append(digits[i]);
+        }
+    }
+
+    /** Round nanoseconds up to whole milliseconds. */
+    private static long toMillis(long nanos) {
+        return (nanos + NANOS_PER_MILLI - 1) / NANOS_PER_MILLI;
+    }
+}
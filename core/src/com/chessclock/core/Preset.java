@@ -0,0 +1,99 @@
+/*************************************************************************
+ * File: Preset.java
+ *
+ * A named time control, resolved and ready to use.
+ *
+ * Created: 2026-10-18
+ *
+ * Author: Simen Heggestøyl
+ *
+ *************************************************************************
+ *
+ *   This file is part of Simple Chess Clock (SCC).
+ *
+ *   SCC is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   SCC is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with SCC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *************************************************************************/
+package com.chessclock.core;
+
+/**
+ * A named time control, with its parameters resolved to milliseconds and
+ * its TimeControl built up front, so that switching to it is just setting
+ * up the clocks.
+ */
+public class Preset {
+    private static final long SECOND = 1000;
+    private static final long MINUTE = 60 * SECOND;
+
+    public final String name;
+    public final DelayType delayType;
+    public final long initTime1;
+    public final long initTime2;
+    public final long delay;
+    public final int periodMoves;
+    public final long periodTime;
+
+    /** True for the presets that come with the app. */
+    public final boolean builtIn;
+
+    private final TimeControl timeControl;
+
+    /**
+     * @param name - the name shown
+     * @param delayType - the delay scheme
+     * @param initTime1 - player 1's starting time, in milliseconds
+     * @param initTime2 - player 2's starting time, in milliseconds
+     * @param delay - the delay or increment, in milliseconds
+     * @param periodMoves - moves before time is added, or 0 for none
+     * @param periodTime - time added after periodMoves, in milliseconds
+     * @param builtIn - whether the preset comes with the app
+     */
+    public Preset(String name, DelayType delayType, long initTime1,
+                  long initTime2, long delay, int periodMoves,
+                  long periodTime, boolean builtIn) {
+        this.name = name;
+        this.delayType = delayType;
+        this.initTime1 = initTime1;
+        this.initTime2 = initTime2;
+        this.delay = delay;
+        this.periodMoves = periodMoves;
+        this.periodTime = periodTime;
+        this.builtIn = builtIn;
+
+        timeControl = periodMoves > 0
+            ? new StandardTimeControl(
+                delayType, initTime1, initTime2, delay,
+                new StandardTimeControl.Period(periodMoves, periodTime))
+            : new StandardTimeControl(
+                delayType, initTime1, initTime2, delay);
+    }
+
+    /** A built-in preset, with times in minutes and the delay in seconds. */
+    static Preset builtIn(String name, DelayType delayType, int minutes1,
+                          int minutes2, int delaySeconds, int periodMoves,
+                          int periodMinutes) {
+        return new Preset(name, delayType, minutes1 * MINUTE,
+                          minutes2 * MINUTE, delaySeconds * SECOND,
+                          periodMoves, periodMinutes * MINUTE, true);
+    }
+
+    public TimeControl timeControl() {
+        return timeControl;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
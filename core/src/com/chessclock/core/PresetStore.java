@@ -0,0 +1,238 @@
+/*************************************************************************
+ * File: PresetStore.java
+ *
+ * The built-in and user-defined time control presets.
+ *
+ * Created: 2026-10-18
+ *
+ * Author: Simen Heggestøyl
+ *
+ *************************************************************************
+ *
+ *   This file is part of Simple Chess Clock (SCC).
+ *
+ *   SCC is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   SCC is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with SCC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *************************************************************************/
+package com.chessclock.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The time control presets: the built-in FIDE, USCF and Armageddon
+ * controls, and the ones saved by the user.
+ *
+ * The user's presets are kept in a small binary file:
+ *
+ *   int    MAGIC
+ *   byte   VERSION
+ *   short  number of presets, then for each:
+ *     UTF    name
+ *     byte   delay type (ordinal)
+ *     int    player 1's starting time, in milliseconds
+ *     int    player 2's starting time, in milliseconds
+ *     int    delay or increment, in milliseconds
+ *     short  moves before time is added, or 0
+ *     int    time added, in milliseconds
+ *
+ * The file is read once by load(), which may be called in the background;
+ * until then, only the built-in presets are there. A file that can't be
+ * read, such as one that was cut short, is reported once and then treated
+ * as no presets. It's rewritten (into a new file that then replaces the
+ * old) whenever a preset is added or removed, which also replaces a file
+ * that couldn't be read. The store is thread safe.
+ */
+public class PresetStore {
+    private static final int MAGIC = 0x53434350;
+    private static final byte VERSION = 1;
+
+    /** The presets that come with the app. */
+    public static final List<Preset> BUILT_IN = builtIns();
+
+    private final File file;
+    private final List<Preset> user = new ArrayList<Preset>();
+    private boolean loaded = false;
+
+    public PresetStore(File file) {
+        this.file = file;
+    }
+
+    private static List<Preset> builtIns() {
+        DelayType none = DelayType.NO_DELAY;
+        DelayType fischer = DelayType.FISCHER;
+        DelayType bronstein = DelayType.BRONSTEIN;
+
+        List<Preset> presets = new ArrayList<Preset>();
+        presets.add(Preset.builtIn("FIDE Classical 40/90, +30, 30s inc",
+                                   fischer, 90, 90, 30, 40, 30));
+        presets.add(Preset.builtIn("FIDE Rapid 15+10", fischer,
+                                   15, 15, 10, 0, 0));
+        presets.add(Preset.builtIn("FIDE Blitz 3+2", fischer,
+                                   3, 3, 2, 0, 0));
+        presets.add(Preset.builtIn("Bullet 1+0", none, 1, 1, 0, 0, 0));
+        presets.add(Preset.builtIn("USCF 40/120, SD/60", none,
+                                   120, 120, 0, 40, 60));
+        presets.add(Preset.builtIn("USCF G/90 d5", bronstein,
+                                   90, 90, 5, 0, 0));
+        presets.add(Preset.builtIn("USCF G/30 d5", bronstein,
+                                   30, 30, 5, 0, 0));
+        presets.add(Preset.builtIn("USCF Blitz G/5 d3", bronstein,
+                                   5, 5, 3, 0, 0));
+        presets.add(Preset.builtIn("Armageddon 5/4", none, 5, 4, 0, 0, 0));
+        return Collections.unmodifiableList(presets);
+    }
+
+    /**
+     * Read the user's presets from the file, if not done already. A missing
+     * file is the same as no presets. So is a file that can't be read, but
+     * only after it's been reported by throwing from the first call.
+     */
+    public synchronized void load() throws IOException {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+
+        DataInputStream in;
+        try {
+            in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)));
+        } catch (FileNotFoundException ex) {
+            return;
+        }
+
+        try {
+            if (in.readInt() != MAGIC || in.readByte() != VERSION) {
+                throw new IOException("Not a preset file: " + file);
+            }
+
+            DelayType[] types = DelayType.values();
+            List<Preset> read = new ArrayList<Preset>();
+            for (int n = in.readShort(); n > 0; n--) {
+                String name = in.readUTF();
+                int type = in.readByte();
+                if (type < 0 || type >= types.length) {
+                    throw new IOException("Invalid delay type: " + type);
+                }
+                read.add(new Preset(
+                    name, types[type], in.readInt(), in.readInt(),
+                    in.readInt(), in.readShort(), in.readInt(), false));
+            }
+
+            user.addAll(read);
+        } finally {
+            in.close();
+        }
+    }
+
+    /** Return the built-in presets followed by the user's. */
+    public synchronized List<Preset> presets() {
+        List<Preset> presets = new ArrayList<Preset>(BUILT_IN);
+        presets.addAll(user);
+        return presets;
+    }
+
+    /** Return the user's presets. */
+    public synchronized List<Preset> userPresets() {
+        return new ArrayList<Preset>(user);
+    }
+
+    /**
+     * Add a user preset, replacing any with the same name, and save the
+     * presets.
+     */
+    public synchronized void add(Preset preset) throws IOException {
+        loadForChange();
+        List<Preset> old = new ArrayList<Preset>(user);
+        removeNamed(preset.name);
+        user.add(preset);
+        save(old);
+    }
+
+    /** Remove the user preset with the given name, and save the presets. */
+    public synchronized void remove(String name) throws IOException {
+        loadForChange();
+        List<Preset> old = new ArrayList<Preset>(user);
+        if (removeNamed(name)) {
+            save(old);
+        }
+    }
+
+    /**
+     * Load the presets before changing them. If the file can't be read,
+     * go on without the presets in it; saving the change replaces it.
+     */
+    private void loadForChange() {
+        try {
+            load();
+        } catch (IOException ex) {
+            // Already treated as no presets
+        }
+    }
+
+    private boolean removeNamed(String name) {
+        for (int i = 0; i < user.size(); i++) {
+            if (user.get(i).name.equals(name)) {
+                user.remove(i);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Write the user's presets, going back to the old ones on failure. */
+    private void save(List<Preset> old) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        try {
+            DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp)));
+            try {
+                out.writeInt(MAGIC);
+                out.writeByte(VERSION);
+                out.writeShort(user.size());
+                for (Preset preset : user) {
+                    out.writeUTF(preset.name);
+                    out.writeByte(preset.delayType.ordinal());
+                    out.writeInt((int)preset.initTime1);
+                    out.writeInt((int)preset.initTime2);
+                    out.writeInt((int)preset.delay);
+                    out.writeShort(preset.periodMoves);
+                    out.writeInt((int)preset.periodTime);
+                }
+            } finally {
+                out.close();
+            }
+
+            if (!tmp.renameTo(file)) {
+                throw new IOException("Couldn't replace " + file);
+            }
+        } catch (IOException ex) {
+            user.clear();
+            user.addAll(old);
+            tmp.delete();
+            throw ex;
+        }
+    }
+}
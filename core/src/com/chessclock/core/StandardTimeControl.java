@@ -0,0 +1,130 @@
+/*************************************************************************
+ * File: StandardTimeControl.java
+ *
+ * A time control made of periods, with a delay or increment per move.
+ *
+ * Created: 2026-10-18
+ *
+ * Author: Simen Heggestøyl
+ *
+ *************************************************************************
+ *
+ *   This file is part of Simple Chess Clock (SCC).
+ *
+ *   SCC is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   SCC is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with SCC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *************************************************************************/
+package com.chessclock.core;
+
+/**
+ * The time control set up in the preferences: a starting time per player,
+ * a delay or increment for every move (see DelayType), and optionally a
+ * chain of periods adding more time once a number of moves are played, as
+ * in "40 moves in 90 minutes, then 30 minutes for the rest of the game".
+ *
+ * All parameters are resolved to nanoseconds when the time control is
+ * created.
+ */
+public class StandardTimeControl implements TimeControl {
+    private static final long NANOS_PER_MILLI = 1000000;
+
+    /** A period ends after a number of moves, adding time to the clock. */
+    public static class Period {
+        public final int moves;
+        public final long time;
+
+        /**
+         * @param moves - number of moves in the period
+         * @param time - time added when the period ends, in milliseconds
+         */
+        public Period(int moves, long time) {
+            this.moves = moves;
+            this.time = time;
+        }
+    }
+
+    private final DelayType delayType;
+    private final long delay;
+    private final long[] initialTime = new long[3];
+
+    /** Per period: the move it ends on, and the time added then. */
+    private final int[] periodEnd;
+    private final long[] periodTime;
+
+    /**
+     * @param delayType - the delay scheme
+     * @param initTime1 - player 1's starting time, in milliseconds
+     * @param initTime2 - player 2's starting time, in milliseconds
+     * @param delay - the delay or increment, in milliseconds
+     * @param periods - periods, in the order they're played
+     */
+    public StandardTimeControl(DelayType delayType, long initTime1,
+                               long initTime2, long delay,
+                               Period... periods) {
+        this.delayType = delayType;
+        this.delay = delay * NANOS_PER_MILLI;
+        initialTime[1] = initTime1 * NANOS_PER_MILLI;
+        initialTime[2] = initTime2 * NANOS_PER_MILLI;
+
+        periodEnd = new int[periods.length];
+        periodTime = new long[periods.length];
+        int moves = 0;
+        for (int i = 0; i < periods.length; i++) {
+            moves += periods[i].moves;
+            periodEnd[i] = moves;
+            periodTime[i] = periods[i].time * NANOS_PER_MILLI;
+        }
+    }
+
+    public DelayType delayType() {
+        return delayType;
+    }
+
+    public long initialTime(int player) {
+        return initialTime[player] / NANOS_PER_MILLI;
+    }
+
+    public long bronsteinDelay(int player) {
+        return delayType.bronsteinDelay(delay) / NANOS_PER_MILLI;
+    }
+
+    public long increment(int player) {
+        return delayType.increment(delay) / NANOS_PER_MILLI;
+    }
+
+    public int movesToGo(int player, int moves) {
+        for (int i = 0; i < periodEnd.length; i++) {
+            if (periodEnd[i] > moves) {
+                return periodEnd[i] - moves;
+            }
+        }
+
+        return 0;
+    }
+
+    public long afterMove(int player, int moves, long timeLeft) {
+        // Capped Fischer never gives more than the time of the periods
+        // started so far
+        long cap = initialTime[player];
+
+        for (int i = 0; i < periodEnd.length && periodEnd[i] <= moves; i++) {
+            cap += periodTime[i];
+            if (periodEnd[i] == moves) {
+                timeLeft += periodTime[i];
+            }
+        }
+
+        return delayType.afterMove(timeLeft, delay, cap);
+    }
+}
@@ -0,0 +1,225 @@
+/*************************************************************************
+ * File: ThinkTimeStats.java
+ *
+ * Each player's think time statistics, updated move by move.
+ *
+ * Created: 2026-10-18
+ *
+ * Author: Simen Heggestøyl
+ *
+ *************************************************************************
+ *
+ *   This file is part of Simple Chess Clock (SCC).
+ *
+ *   SCC is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   SCC is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with SCC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *************************************************************************/
+package com.chessclock.core;
+
+/**
+ * Each player's think time statistics, kept up to date move by move: the
+ * number of moves, the mean and standard deviation, the longest think and
+ * the 90th percentile.
+ *
+ * The mean and variance are updated with Welford's method. The percentile
+ * is exact for a player's first EXACT_MOVES moves, which are kept sorted.
+ * After that it's estimated with the P-square algorithm (Jain and
+ * Chlamtac, 1985), which tracks five markers whose heights approximate the
+ * minimum, the 45th, 90th and 95th percentiles and the maximum, adjusting
+ * them with a piecewise parabolic fit as moves come in. The markers start
+ * out at those ranks among the sorted moves; starting them from only five
+ * moves, as in the original, leaves the 90th percentile far too low for
+ * the length of a game.
+ *
+ * Adding a move takes bounded time (at most EXACT_MOVES steps, while the
+ * moves are kept sorted) and allocates nothing, and the state is a fixed
+ * size however long the game. Times are in nanoseconds, and the
+ * standard deviation is that of all the player's moves so far.
+ */
+public class ThinkTimeStats {
+    /** The percentile estimated, as a fraction. */
+    public static final double P = 0.9;
+
+    /** How many moves of each player are kept for an exact percentile. */
+    public static final int EXACT_MOVES = 32;
+
+    private static final int MARKERS = 5;
+
+    /** How far each marker's desired position moves per observation. */
+    private static final double[] STEP = { 0, P / 2, P, (1 + P) / 2, 1 };
+
+    /** Per player, indexed by player number. */
+    private final int[] count = new int[3];
+    private final double[] mean = new double[3];
+    private final double[] m2 = new double[3];
+    private final long[] longest = new long[3];
+
+    /** The first moves of each player, sorted, from base(player). */
+    private final long[] sorted = new long[2 * EXACT_MOVES];
+
+    /**
+     * The P-square markers of each player, MARKERS per player starting at
+     * player * MARKERS: their heights, positions and desired positions.
+     */
+    private final double[] height = new double[3 * MARKERS];
+    private final int[] position = new int[3 * MARKERS];
+    private final double[] desired = new double[3 * MARKERS];
+
+    /** Forget all moves. */
+    public void clear() {
+        for (int player = 1; player <= 2; player++) {
+            count[player] = 0;
+            mean[player] = 0;
+            m2[player] = 0;
+            longest[player] = 0;
+        }
+    }
+
+    /** Add a move by the given player, taking the given think time. */
+    public void add(int player, long thinkTime) {
+        double x = thinkTime;
+        int n = ++count[player];
+
+        double delta = x - mean[player];
+        mean[player] += delta / n;
+        m2[player] += delta * (x - mean[player]);
+        longest[player] = Math.max(longest[player], thinkTime);
+
+        if (n <= EXACT_MOVES) {
+            insertSorted(base(player), n - 1, thinkTime);
+            if (n == EXACT_MOVES) {
+                startMarkers(player);
+            }
+        } else {
+            addMarked(player * MARKERS, x);
+        }
+    }
+
+    /** Insert a time among the first size sorted ones from base. */
+    private void insertSorted(int base, int size, long time) {
+        int i = base + size;
+        while (i > base && sorted[i - 1] > time) {
+            sorted[i] = sorted[i - 1];
+            i--;
+        }
+        sorted[i] = time;
+    }
+
+    private static int base(int player) {
+        return (player - 1) * EXACT_MOVES;
+    }
+
+    /** Place the given player's markers at their ranks in the sorted moves. */
+    private void startMarkers(int player) {
+        int base = player * MARKERS;
+        for (int i = 0; i < MARKERS; i++) {
+            double rank = STEP[i] * (EXACT_MOVES - 1);
+            int index = (int)Math.round(rank);
+            height[base + i] = sorted[base(player) + index];
+            position[base + i] = index;
+            desired[base + i] = rank;
+        }
+    }
+
+    /** One step of the P-square algorithm. */
+    private void addMarked(int base, double x) {
+        double[] q = height;
+        int[] pos = position;
+
+        // Find the cell x falls into, stretching the ends if needed
+        int k;
+        if (x < q[base]) {
+            q[base] = x;
+            k = 0;
+        } else if (x >= q[base + 4]) {
+            q[base + 4] = x;
+            k = 3;
+        } else {
+            k = 0;
+            while (x >= q[base + k + 1]) {
+                k++;
+            }
+        }
+
+        for (int i = k + 1; i < MARKERS; i++) {
+            pos[base + i]++;
+        }
+        for (int i = 0; i < MARKERS; i++) {
+            desired[base + i] += STEP[i];
+        }
+
+        // Move the middle markers towards where they should be
+        for (int i = base + 1; i < base + 4; i++) {
+            double d = desired[i] - pos[i];
+            if ((d >= 1 && pos[i + 1] - pos[i] > 1)
+                    || (d <= -1 && pos[i - 1] - pos[i] < -1)) {
+                int s = d > 0 ? 1 : -1;
+                double parabolic = q[i] + (double)s / (pos[i + 1] - pos[i - 1])
+                    * ((pos[i] - pos[i - 1] + s) * (q[i + 1] - q[i])
+                       / (pos[i + 1] - pos[i])
+                       + (pos[i + 1] - pos[i] - s) * (q[i] - q[i - 1])
+                       / (pos[i] - pos[i - 1]));
+                if (q[i - 1] < parabolic && parabolic < q[i + 1]) {
+                    q[i] = parabolic;
+                } else {
+                    q[i] += s * (q[i + s] - q[i]) / (pos[i + s] - pos[i]);
+                }
+                pos[i] += s;
+            }
+        }
+    }
+
+    /** Return the number of moves the given player has made. */
+    public int count(int player) {
+        return count[player];
+    }
+
+    /** Return the given player's mean think time, or 0 before any move. */
+    public long mean(int player) {
+        return Math.round(mean[player]);
+    }
+
+    /** Return the standard deviation of the given player's think times. */
+    public long standardDeviation(int player) {
+        int n = count[player];
+        return n == 0 ? 0 : Math.round(Math.sqrt(m2[player] / n));
+    }
+
+    /** Return the given player's longest think time. */
+    public long longest(int player) {
+        return longest[player];
+    }
+
+    /**
+     * Return the 90th percentile of the given player's think times, or 0
+     * before any move. Up to EXACT_MOVES moves, it's interpolated between
+     * the two nearest moves, at rank 0.9 * (moves - 1).
+     */
+    public long percentile90(int player) {
+        int n = count[player];
+        if (n == 0) {
+            return 0;
+        }
+        if (n > EXACT_MOVES) {
+            return Math.round(height[player * MARKERS + 2]);
+        }
+
+        int base = base(player);
+        double rank = P * (n - 1);
+        int below = (int)rank;
+        long low = sorted[base + below];
+        long high = sorted[base + Math.min(below + 1, n - 1)];
+        return Math.round(low + (rank - below) * (high - low));
+    }
+}
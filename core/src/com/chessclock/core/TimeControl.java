@@ -0,0 +1,70 @@
+/*************************************************************************
+ * File: TimeControl.java
+ *
+ * The rules for how much time the players get.
+ *
+ * Created: 2026-10-18
+ *
+ * Author: Simen Heggestøyl
+ *
+ *************************************************************************
+ *
+ *   This file is part of Simple Chess Clock (SCC).
+ *
+ *   SCC is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   SCC is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with SCC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *************************************************************************/
+package com.chessclock.core;
+
+/**
+ * A time control decides how much time the players start with, and how
+ * their time changes as they make moves. Implementations resolve their
+ * parameters up front, since the clock engine consults them on every
+ * press.
+ */
+public interface TimeControl {
+    /** Return the given player's starting time, in milliseconds. */
+    long initialTime(int player);
+
+    /**
+     * Return the Bronstein delay the given player gets for each move, in
+     * milliseconds.
+     */
+    long bronsteinDelay(int player);
+
+    /**
+     * Return the increment the given player gets for each move, in
+     * milliseconds. A capped increment counts in full.
+     */
+    long increment(int player);
+
+    /**
+     * Return how many moves the given player has left until time is next
+     * added to their clock, or 0 if no more time is added.
+     * @param player - the player
+     * @param moves - how many moves the player has completed
+     */
+    int movesToGo(int player, int moves);
+
+    /**
+     * Return the given player's time left after completing a move.
+     * @param player - the player who completed the move
+     * @param moves - how many moves the player has completed, this one
+     * included
+     * @param timeLeft - time left when the move was completed, in
+     * nanoseconds
+     * @return the new time left, in nanoseconds
+     */
+    long afterMove(int player, int moves, long timeLeft);
+}
@@ -0,0 +1,194 @@
+/*************************************************************************
+ * File: TimeFormatter.java
+ *
+ * Formats clock times without allocating.
+ *
+ * Created: 2026-10-18
+ *
+ * Author: Simen Heggestøyl
+ *
+ *************************************************************************
+ *
+ *   This file is part of Simple Chess Clock (SCC).
+ *
+ *   SCC is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   SCC is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with SCC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *************************************************************************/
+package com.chessclock.core;
+
+/**
+ * Formats times as readable text, writing the digits straight into a
+ * caller-provided char array. Nothing is allocated per call, so the clocks
+ * can be refreshed many times per second without producing garbage.
+ */
+public class TimeFormatter {
+
+    /**
+     * If showDeciseconds is enabled, display deciseconds for times shorter
+     * than this threshold, in seconds.
+     */
+    public static final int SHOW_DECISECONDS_THRESHOLD = 10;
+
+    /** Large enough for any clock with a delay suffix. */
+    public static final int MAX_LENGTH = 48;
+
+    private static final long NANOS_PER_MILLI = 1000000;
+
+    private boolean showDeciseconds = true;
+    private boolean showHundredths = false;
+
+    public void setShowDeciseconds(boolean showDeciseconds) {
+        this.showDeciseconds = showDeciseconds;
+    }
+
+    public boolean showDeciseconds() {
+        return showDeciseconds;
+    }
+
+    /**
+     * Whether to add hundredths of seconds wherever deciseconds are
+     * displayed.
+     */
+    public void setShowHundredths(boolean showHundredths) {
+        this.showHundredths = showHundredths;
+    }
+
+    /**
+     * Format a clock time and its Bronstein delay (if any) into text.
+     * @param text - where to write the text, at least MAX_LENGTH long
+     * @param time - time, in milliseconds
+     * @param bronsteinDelay - delay, in milliseconds
+     * @return the length of the text
+     */
+    public int formatClock(char[] text, long time, long bronsteinDelay) {
+        int end = format(text, 0, time, false);
+
+        if (bronsteinDelay > 0) {
+            if (showDeciseconds) {
+                text[end++] = '\n';
+            }
+            text[end++] = '+';
+            end = format(text, end, bronsteinDelay, true);
+        }
+
+        return end;
+    }
+
+    /**
+     * Format the provided time to readable text.
+     * @param text - where to write the text
+     * @param start - where in text to start writing
+     * @param t - time, in milliseconds
+     * @param compact - whether or not to use compact format
+     * @return the position right after the written text
+     */
+    public int format(char[] text, int start, long t, boolean compact) {
+        // If not displaying deciseconds, round up to the nearest second.
+        if (!showDeciseconds) {
+            t = (t + 999) / 1000 * 1000;
+        }
+
+        int centiseconds = (int)(t / 10) % 10;
+        int deciseconds = (int)(t / 100) % 10;
+        int seconds = (int)(t / 1000) % 60;
+        int minutes = (int)(t / 1000 / 60) % 60;
+        int hours = (int)(t / 1000 / 60 / 60);
+
+        int pos = start;
+
+        if (hours > 0) {
+            pos = writeNumber(text, pos, hours);
+            text[pos++] = ':';
+            pos = writeTwoDigits(text, pos, minutes);
+            text[pos++] = ':';
+            pos = writeTwoDigits(text, pos, seconds);
+        } else if (minutes > 0) {
+            pos = writeNumber(text, pos, minutes);
+            text[pos++] = ':';
+            pos = writeTwoDigits(text, pos, seconds);
+        } else {
+            if (compact) {
+                pos = writeNumber(text, pos, seconds);
+            } else {
+                text[pos++] = '0';
+                text[pos++] = ':';
+                pos = writeTwoDigits(text, pos, seconds);
+            }
+
+            if (showDeciseconds && (seconds < SHOW_DECISECONDS_THRESHOLD)) {
+                text[pos++] = '.';
+                text[pos++] = (char)('0' + deciseconds);
+                if (showHundredths) {
+                    text[pos++] = (char)('0' + centiseconds);
+                }
+            }
+        }
+
+        return pos;
+    }
+
+    /**
+     * Return how long it takes until a time that is counting down, formatted
+     * by this formatter, shows different text. This is also when it reaches
+     * zero, if that comes first.
+     * @param t - the time, in nanoseconds
+     * @return nanoseconds until the text changes, or Long.MAX_VALUE if never
+     */
+    public long nanosUntilChange(long t) {
+        if (t <= 0) {
+            return Long.MAX_VALUE;
+        }
+
+        // Times are formatted from whole milliseconds, rounded up
+        long millis = (t + NANOS_PER_MILLI - 1) / NANOS_PER_MILLI;
+        long next;
+
+        if (!showDeciseconds) {
+            // Whole seconds, rounded up: changes at the next lower second
+            next = (millis - 1) / 1000 * 1000;
+        } else {
+            long unit = millis >= SHOW_DECISECONDS_THRESHOLD * 1000 ? 1000
+                : showHundredths ? 10 : 100;
+            // Truncated to unit: changes as soon as it drops below a multiple
+            next = millis / unit * unit - 1;
+            if (next < 0) {
+                next = 0;
+            }
+        }
+
+        return t - next * NANOS_PER_MILLI;
+    }
+
+    /** Write a number in as many digits as needed. */
+    private static int writeNumber(char[] text, int pos, int n) {
+        int digits = 1;
+        for (int rest = n / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+
+        for (int i = pos + digits - 1; i >= pos; i--) {
+            text[i] = (char)('0' + n % 10);
+            n /= 10;
+        }
+
+        return pos + digits;
+    }
+
+    /** Write a number below 100 in exactly two digits. */
+    private static int writeTwoDigits(char[] text, int pos, int n) {
+        text[pos] = (char)('0' + n / 10);
+        text[pos + 1] = (char)('0' + n % 10);
+        return pos + 2;
+    }
+}
@@ -0,0 +1,38 @@
+/*************************************************************************
+ * File: TimeSource.java
+ *
+ * A monotonic time source for the clock engine.
+ *
+ * Created: 2026-10-18
+ *
+ * Author: Simen Heggestøyl
+ *
+ *************************************************************************
+ *
+ *   This file is part of Simple Chess Clock (SCC).
+ *
+ *   SCC is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   SCC is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with SCC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *************************************************************************/
+package com.chessclock.core;
+
+/**
+ * Source of monotonic time. On the device this is backed by
+ * SystemClock.elapsedRealtimeNanos(), but any other source can be plugged
+ * in, e.g. a virtual clock when running the engine off-device.
+ */
+public interface TimeSource {
+    /** Return the current time, in nanoseconds. */
+    long nanoTime();
+}
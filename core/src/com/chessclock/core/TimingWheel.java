@@ -0,0 +1,195 @@
+/*************************************************************************
+ * File: TimingWheel.java
+ *
+ * Keeps deadlines for many timers, in a hierarchical timing wheel.
+ *
+ * Created: 2026-10-18
+ *
+ * Author: Simen Heggestøyl
+ *
+ *************************************************************************
+ *
+ *   This file is part of Simple Chess Clock (SCC).
+ *
+ *   SCC is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   SCC is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with SCC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *************************************************************************/
+package com.chessclock.core;
+
+/**
+ * A hierarchical timing wheel, for keeping deadlines for a large number of
+ * timers (identified by number) and finding those that have passed.
+ *
+ * Time is cut into ticks. The wheel has LEVELS levels of 64 slots each: a
+ * slot of the lowest level holds the timers due in one tick, a slot of the
+ * next level those due in a range of 64 ticks, and so on. A timer is put in
+ * the lowest level that covers its deadline. As time passes, each slot of
+ * a higher level is emptied into the levels below when its range comes
+ * up, until the timers reach the lowest level and expire.
+ *
+ * Scheduling and cancelling a timer take constant time. Advancing costs a
+ * little per tick passed, plus the timers moved or expired. The slots are
+ * doubly linked lists threaded through int arrays indexed by timer, so
+ * nothing is allocated after construction.
+ *
+ * A timer expires in the first tick that ends at or after its deadline, so
+ * never early, and at most one tick late (if advanced in time).
+ */
+public class TimingWheel {
+
+    /** Notified of expired timers. */
+    public interface Listener {
+        void expired(int timer);
+    }
+
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int LEVELS = 6;
+    private static final int NONE = -1;
+
+    private final long tickNanos;
+    private long currentTick;
+
+    /** First timer of every slot, by level * SLOTS + slot. */
+    private final int[] heads = new int[LEVELS * SLOTS];
+
+    /** Per timer: links, the slot it's in (or NONE), and its deadline. */
+    private final int[] next;
+    private final int[] prev;
+    private final int[] slotOf;
+    private final long[] deadlineTick;
+
+    /**
+     * Create a wheel for the given number of timers, with the given tick
+     * length, starting at the given time (all in nanoseconds).
+     */
+    public TimingWheel(int capacity, long tickNanos, long now) {
+        this.tickNanos = tickNanos;
+        currentTick = now / tickNanos;
+        next = new int[capacity];
+        prev = new int[capacity];
+        slotOf = new int[capacity];
+        deadlineTick = new long[capacity];
+
+        for (int i = 0; i < heads.length; i++) {
+            heads[i] = NONE;
+        }
+        for (int i = 0; i < capacity; i++) {
+            slotOf[i] = NONE;
+        }
+    }
+
+    /** Set the deadline of a timer, replacing any earlier one. */
+    public void schedule(int timer, long deadline) {
+        cancel(timer);
+        // Round up, so that the timer doesn't expire early
+        deadlineTick[timer] = (deadline + tickNanos - 1) / tickNanos;
+        // The current tick is done already, so the earliest is the next one
+        insert(timer, currentTick + 1);
+    }
+
+    public void cancel(int timer) {
+        int slot = slotOf[timer];
+        if (slot == NONE) {
+            return;
+        }
+
+        if (prev[timer] == NONE) {
+            heads[slot] = next[timer];
+        } else {
+            next[prev[timer]] = next[timer];
+        }
+        if (next[timer] != NONE) {
+            prev[next[timer]] = prev[timer];
+        }
+        slotOf[timer] = NONE;
+    }
+
+    public boolean scheduled(int timer) {
+        return slotOf[timer] != NONE;
+    }
+
+    /**
+     * Move the wheel up to the given time, telling the listener about every
+     * timer that expires on the way. The listener may schedule timers.
+     */
+    public void advance(long now, Listener listener) {
+        long targetTick = now / tickNanos;
+
+        while (currentTick < targetTick) {
+            currentTick++;
+
+            // Empty the higher level slots whose range starts now
+            for (int level = 1; level < LEVELS; level++) {
+                int shift = level * SLOT_BITS;
+                if ((currentTick & ((1L << shift) - 1)) != 0) {
+                    break;
+                }
+                cascade(level * SLOTS + (int)((currentTick >>> shift) & (SLOTS - 1)));
+            }
+
+            int slot = (int)(currentTick & (SLOTS - 1));
+            int timer = heads[slot];
+            heads[slot] = NONE;
+            while (timer != NONE) {
+                int following = next[timer];
+                slotOf[timer] = NONE;
+                listener.expired(timer);
+                timer = following;
+            }
+        }
+    }
+
+    /** Put the timers of a slot back in, in the levels below. */
+    private void cascade(int slot) {
+        int timer = heads[slot];
+        heads[slot] = NONE;
+        while (timer != NONE) {
+            int following = next[timer];
+            slotOf[timer] = NONE;
+            // Slots are emptied before the current tick's timers expire
+            insert(timer, currentTick);
+            timer = following;
+        }
+    }
+
+    /** Put a timer in its slot, to expire no earlier than the given tick. */
+    private void insert(int timer, long earliest) {
+        long tick = Math.max(deadlineTick[timer], earliest);
+        long delta = tick - currentTick;
+
+        int level = 0;
+        while (level < LEVELS - 1
+               && delta >= 1L << ((level + 1) * SLOT_BITS)) {
+            level++;
+        }
+
+        // Beyond the top level, wait in its farthest slot and come back
+        long limit = (1L << (LEVELS * SLOT_BITS)) - 1;
+        if (delta > limit) {
+            tick = currentTick + limit;
+        }
+
+        int slot = level * SLOTS
+            + (int)((tick >>> (level * SLOT_BITS)) & (SLOTS - 1));
+        int head = heads[slot];
+        next[timer] = head;
+        prev[timer] = NONE;
+        if (head != NONE) {
+            prev[head] = timer;
+        }
+        heads[slot] = timer;
+        slotOf[timer] = slot;
+    }
+}
@@ -0,0 +1,221 @@
+/*************************************************************************
+ * File: AlertPlayer.java
+ *
+ * Plays the alert when time runs out, from a preloaded sound.
+ *
+ * Created: 2026-10-18
+ *
+ * Author: Simen Heggestøyl
+ *
+ *************************************************************************
+ *
+ *   This file is part of Simple Chess Clock (SCC).
+ *
+ *   SCC is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   SCC is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with SCC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *************************************************************************/
+package com.chessclock.android;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.media.AudioAttributes;
+import android.media.MediaMetadataRetriever;
+import android.media.Ringtone;
+import android.media.RingtoneManager;
+import android.media.SoundPool;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+
+/**
+ * Plays the alert when a flag falls, without delay.
+ *
+ * The alert sound is loaded in the background as soon as it's chosen, and
+ * decoded into a SoundPool, so that playing it is just starting a ready
+ * buffer. If the sound couldn't be decoded (or isn't done yet), a Ringtone
+ * prepared in the background is played instead, as the app always did. So
+ * is a sound longer than the SoundPool holds, which would be cut short.
+ */
+public class AlertPlayer {
+    private static final String TAG = "AlertPlayer";
+
+    /**
+     * The longest sound decoded into the SoundPool. It holds about a
+     * megabyte of decoded audio, some 5 seconds of CD quality stereo.
+     */
+    private static final long MAX_SOUND_POOL_MILLIS = 5000;
+
+    private final Context context;
+    private final HandlerThread thread = new HandlerThread(TAG);
+    private final Handler handler;
+    private final SoundPool soundPool;
+
+    /** The sound being loaded, and the sound ready to play (or 0). */
+    private volatile int loadingSound = 0;
+    private volatile int readySound = 0;
+    private volatile Ringtone ringtone = null;
+
+    /** The stream of the playing sound, or 0. */
+    private int stream = 0;
+
+    public AlertPlayer(Context context) {
+        this.context = context.getApplicationContext();
+
+        soundPool = new SoundPool.Builder()
+            .setMaxStreams(1)
+            .setAudioAttributes(new AudioAttributes.Builder()
+                .setUsage(AudioAttributes.USAGE_NOTIFICATION_RINGTONE)
+                .setContentType(AudioAttributes.CONTENT_TYPE_SONIFICATION)
+                .build())
+            .build();
+        thread.start();
+        handler = new Handler(thread.getLooper());
+
+        soundPool.setOnLoadCompleteListener(
+            new SoundPool.OnLoadCompleteListener() {
+                public void onLoadComplete(SoundPool pool, final int sound,
+                                           final int status) {
+                    // Handle it after the load() call that started it
+                    handler.post(new Runnable() {
+                        public void run() {
+                            loaded(sound, status);
+                        }
+                    });
+                }
+            });
+    }
+
+    /** Make a decoded sound the one to play, unless it's been replaced. */
+    private void loaded(int sound, int status) {
+        if (sound != loadingSound) {
+            soundPool.unload(sound);
+        } else if (status == 0) {
+            replaceReadySound(sound);
+        } else {
+            Log.w(TAG, "Couldn't decode the alert sound");
+            replaceReadySound(0);
+        }
+    }
+
+    private void replaceReadySound(int sound) {
+        int old = readySound;
+        readySound = sound;
+        if (old != 0) {
+            soundPool.unload(old);
+        }
+    }
+
+    /**
+     * Return true if the given sound is short enough for the SoundPool.
+     * Sounds of unknown length are left to the ringtone.
+     */
+    private boolean fitsSoundPool(Uri uri) {
+        MediaMetadataRetriever retriever = new MediaMetadataRetriever();
+        try {
+            retriever.setDataSource(context, uri);
+            String duration = retriever.extractMetadata(
+                MediaMetadataRetriever.METADATA_KEY_DURATION);
+            return duration != null
+                && Long.parseLong(duration) <= MAX_SOUND_POOL_MILLIS;
+        } catch (RuntimeException ex) {
+            return false;
+        } finally {
+            retriever.release();
+        }
+    }
+
+    /**
+     * Load the given alert sound in the background. Until it's decoded, the
+     * previous sound is played. A sound too long for the SoundPool is left
+     * to the ringtone.
+     */
+    public void load(final String alertTone) {
+        handler.post(new Runnable() {
+            public void run() {
+                Uri uri = Uri.parse(alertTone);
+                ringtone = RingtoneManager.getRingtone(context, uri);
+
+                if (!fitsSoundPool(uri)) {
+                    loadingSound = 0;
+                    replaceReadySound(0);
+                    return;
+                }
+
+                try {
+                    AssetFileDescriptor file = context.getContentResolver()
+                        .openAssetFileDescriptor(uri, "r");
+                    if (file == null) {
+                        // Nothing to decode, so fall back to the ringtone
+                        loadingSound = 0;
+                        replaceReadySound(0);
+                        return;
+                    }
+                    try {
+                        // Decoded by the SoundPool, which then calls back
+                        loadingSound = soundPool.load(file, 1);
+                    } finally {
+                        file.close();
+                    }
+                } catch (Exception ex) {
+                    // Not a file we can decode, so fall back to the ringtone
+                    Log.w(TAG, "Couldn't open the alert sound", ex);
+                    loadingSound = 0;
+                    replaceReadySound(0);
+                }
+            }
+        });
+    }
+
+    public void play() {
+        int sound = readySound;
+        if (sound != 0) {
+            stream = soundPool.play(sound, 1, 1, 1, 0, 1);
+            if (stream != 0) {
+                return;
+            }
+        }
+
+        Ringtone fallback = ringtone;
+        if (fallback != null) {
+            fallback.play();
+        }
+    }
+
+    public void stop() {
+        if (stream != 0) {
+            soundPool.stop(stream);
+            stream = 0;
+        }
+
+        Ringtone fallback = ringtone;
+        if (fallback != null && fallback.isPlaying()) {
+            fallback.stop();
+        }
+    }
+
+    /**
+     * Stop the alert and free its resources, once a sound being loaded is
+     * done with them.
+     */
+    public void release() {
+        stop();
+        handler.post(new Runnable() {
+            public void run() {
+                soundPool.release();
+                thread.quit();
+            }
+        });
+    }
+}
@@ -0,0 +1,141 @@
+/*************************************************************************
+ * File: ArbiterLink.java
+ *
+ * Broadcasts the state of the clocks to arbiter screens.
+ *
+ * Created: 2026-10-18
+ *
+ * Author: Simen Heggestøyl
+ *
+ *************************************************************************
+ *
+ *   This file is part of Simple Chess Clock (SCC).
+ *
+ *   SCC is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   SCC is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with SCC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *************************************************************************/
+package com.chessclock.android;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.chessclock.core.ClockBroadcaster;
+import com.chessclock.core.ClockEngine;
+import com.chessclock.core.ClockFrame;
+import com.chessclock.core.TimeSource;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MulticastSocket;
+
+/**
+ * Broadcasts the state of the clocks to arbiter screens on the local
+ * network, as ClockFrames sent to a multicast group (see ClockReceiver for
+ * the receiving end). A frame is published on every press, pause, reset and
+ * flag fall, and sent right away on a background thread, since the network
+ * can't be used from the UI thread.
+ *
+ * Broadcasting is best effort: if the network isn't there, frames are
+ * dropped and the clock carries on as usual.
+ */
+public class ArbiterLink {
+    private static final String TAG = "ArbiterLink";
+
+    /** The multicast group and port arbiter screens listen on. */
+    public static final String GROUP = "239.255.43.21";
+    public static final int PORT = 43210;
+
+    private static final TimeSource ELAPSED_REALTIME = new TimeSource() {
+        public long nanoTime() {
+            return SystemClock.elapsedRealtimeNanos();
+        }
+    };
+
+    private final int firstBoard;
+    private final HandlerThread thread = new HandlerThread(TAG);
+    private final Handler handler;
+    private final ClockFrame frame = new ClockFrame();
+
+    /** Set on the background thread once the socket is open. */
+    private volatile ClockBroadcaster broadcaster;
+    private MulticastSocket socket;
+
+    /**
+     * Open the link in the background, for the boards numbered from the
+     * given board number up.
+     */
+    public ArbiterLink(int firstBoard) {
+        this.firstBoard = firstBoard;
+        thread.start();
+        handler = new Handler(thread.getLooper());
+
+        handler.post(new Runnable() {
+            public void run() {
+                try {
+                    socket = new MulticastSocket();
+                    socket.setTimeToLive(1);
+                    broadcaster = new ClockBroadcaster(
+                        socket,
+                        new InetSocketAddress(
+                            InetAddress.getByName(GROUP), PORT),
+                        ELAPSED_REALTIME);
+                } catch (IOException ex) {
+                    Log.w(TAG, "Couldn't open the broadcast socket", ex);
+                }
+            }
+        });
+    }
+
+    /**
+     * Broadcast the state of a board's clocks as of now. Boards are
+     * numbered from 0 on the device.
+     */
+    public void publish(int board, ClockEngine engine) {
+        ClockBroadcaster b = broadcaster;
+        if (b == null) {
+            return;
+        }
+
+        frame.set(firstBoard + board, engine);
+        // Network access isn't allowed here, so if the frames pile up,
+        // the oldest give way; the newest may be the flag fall
+        b.publishDroppingOldest(frame);
+        handler.post(flush);
+    }
+
+    private final Runnable flush = new Runnable() {
+        public void run() {
+            try {
+                broadcaster.flush();
+            } catch (IOException ex) {
+                Log.w(TAG, "Couldn't broadcast the clocks", ex);
+            }
+        }
+    };
+
+    /** Close the link, once the frames published so far are sent. */
+    public void close() {
+        handler.post(new Runnable() {
+            public void run() {
+                if (socket != null) {
+                    socket.close();
+                }
+                thread.quit();
+            }
+        });
+    }
+}
@@ -29,33 +29,56 @@
 package com.chessclock.android;
 
 import android.app.Activity;
+import android.app.AlarmManager;
 import android.app.AlertDialog;
 import android.app.Dialog;
+import android.app.PendingIntent;
+import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
+import android.content.IntentFilter;
 import android.content.SharedPreferences;
 import android.content.SharedPreferences.Editor;
+import android.content.pm.ApplicationInfo;
 import android.graphics.Color;
-import android.media.Ringtone;
-import android.media.RingtoneManager;
-import android.net.Uri;
+import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.Process;
+import android.os.SystemClock;
 import android.preference.PreferenceManager;
 import android.provider.*;
 import android.util.Log;
+import android.view.Choreographer;
 import android.view.HapticFeedbackConstants;
 import android.view.Menu;
+import android.view.MotionEvent;
 import android.view.MenuItem;
 import android.view.View;
 import android.view.Window;
 import android.view.WindowManager;
 import android.view.View.OnClickListener;
+import android.view.View.OnLongClickListener;
 import android.widget.Button;
+import android.widget.EditText;
 import android.widget.TextView;
+import android.widget.Toast;
 
+import com.chessclock.core.ClockEngine;
+import com.chessclock.core.GameJournal;
+import com.chessclock.core.Preset;
+import com.chessclock.core.PresetStore;
+import com.chessclock.core.TimeFormatter;
+import com.chessclock.core.TimeSource;
+
+import java.io.File;
+import java.io.IOException;
 import java.lang.Math;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
 public class ChessClock extends Activity {
 	
@@ -71,25 +94,63 @@ public class ChessClock extends Activity {
 	/** Constants for the dialog windows */
 	private static final int RESET = 1;
 
-    /** Clock tick length, in milliseconds */
-    private static int TICK_LENGTH = 100;
+    /** Tag of the start up measurements in the log. */
+    private static final String STARTUP_TAG = "Startup";
+
+    /**
+     * The preferences snapshot, kept for activities recreated in the same
+     * process, and whether the preferences have changed since.
+     */
+    private static GameConfig cachedConfig = null;
+    private static boolean cachedConfigStale = false;
+
+    /** Broadcast by the alarm set for the flag falling in the background. */
+    private static final String FLAG_FALL_ACTION =
+        "com.chessclock.android.FLAG_FALL";
+
+    /**
+     * The journal of the running game, in the app's files directory. The
+     * second board of a bughouse game gets its own.
+     */
+    private static final String JOURNAL_FILE = "game.journal";
+    private static final String JOURNAL_FILE_2 = "game2.journal";
+
+    /**
+     * The time control presets, in the app's files directory. Loaded in the
+     * background once per process, and kept for recreated activities.
+     */
+    private static final String PRESETS_FILE = "presets";
+    private static PresetStore presets = null;
 
-    /** If showDeciseconds is enabled,
-     * display deciseconds for times shorter than this
-     * threshold, in seconds.
+    /**
+     * The finished and reset games, and the time control of the games on
+     * the clocks, for recording them.
      */
-    private static int SHOW_DECISECONDS_THRESHOLD = 10;
+    private static GameHistory history = null;
+    private String gameTimeControl;
 
-	/** Time control values */
-	private static String NO_DELAY = "None";
-	private static String FISCHER = "Fischer";
-    private static String CAPPED_FISCHER = "Capped Fischer";
-	private static String BRONSTEIN = "Bronstein";
+    /** Set while storing a preset's time control in the preferences. */
+    private boolean prefsSelfEdit = false;
 
-    /** Time unit values */
-    private static String HOURS = "Hours";
-    private static String MINUTES = "Minutes";
-    private static String SECONDS = "Seconds";
+    /**
+     * Set when the game mode changes, so that the recreated activity starts
+     * a new game rather than restoring the old one.
+     */
+    private static boolean freshGame = false;
+
+    /**
+     * The views of each clock, by clock number: the board times 2, plus the
+     * player minus 1. The bughouse layout has two boards, main.xml one.
+     */
+    private static final int[] BUTTON_IDS = {
+        R.id.Player1, R.id.Player2, R.id.Player3, R.id.Player4
+    };
+    private static final int[] CLOCK_IDS = {
+        R.id.t_Player1, R.id.t_Player2, R.id.t_Player3, R.id.t_Player4
+    };
+    private static final int[] LIGHT_IDS = {
+        R.id.l_Player1, R.id.l_Player2, R.id.l_Player3, R.id.l_Player4
+    };
 
 	/**-----------------------------------
 	 *     CHESSCLOCK CLASS MEMBERS
@@ -97,30 +158,92 @@ public class ChessClock extends Activity {
 	/** Objects/Classes */
 	private Handler myHandler = new Handler();
 	private DialogFactory DF = new DialogFactory();
-	private String delay = NO_DELAY;
-	private String alertTone;
-	private Ringtone ringtone = null;
-    private String initTimeUnits = MINUTES;
-    private String delayTimeUnits = SECONDS;
-
-    /** Time per player, in initTimeUnits. */
-    private int initTime1 = 10;
-    private int initTime2 = 10;
-    private boolean differentInitTime = false;
-
-	private int b_delay;
-	private long t_P1;
-	private long t_P2;
-	private int delay_time;
-	private int onTheClock = 0;
-	private int savedOTC = 0;
-
-	private boolean haptic = false;
-    private boolean blackBackground = false;
+    private AlertPlayer alert;
+
+    /**
+     * The preferences in use. A new snapshot is only read when the
+     * preferences have changed since the last one.
+     */
+    private GameConfig config;
+    private boolean prefsChanged = false;
+
+    private static final TimeSource ELAPSED_REALTIME = new TimeSource() {
+        public long nanoTime() {
+            return SystemClock.elapsedRealtimeNanos();
+        }
+    };
+
+    /**
+     * Keep the time left for both players, per board. A bughouse game is two
+     * linked boards; they start and pause together, and the game ends on
+     * both when a flag falls on either.
+     */
+    private ClockEngine[] engines;
+
+    /**
+     * Save the game on every press and pause, per board, so that it
+     * survives the process being killed. An entry is null if its journal
+     * file couldn't be opened.
+     */
+    private GameJournal[] journals;
+
+    /**
+     * The journals of both boards, being opened on a thread of their own
+     * while the window is set up, since mapping the files may wait for the
+     * disk.
+     */
+    private FutureTask<GameJournal[]> journalsOpening;
+
+    /**
+     * Set until the journals are open and the game in them is recovered.
+     * Until then the clocks show a new game, and the buttons do nothing.
+     */
+    private boolean recovering = true;
+
+    /** Set between onResume() and onPause(). */
+    private boolean resumed = false;
+
+    /** Broadcasts the clocks to arbiter screens, or null if that's off. */
+    private ArbiterLink arbiter;
+
 	private boolean timeup = false;
 	private boolean prefmenu = false;
-	private boolean delayed = false;
-    private boolean showDeciseconds = true;
+
+    /**
+     * Set to go off when the running player's flag falls, while the clock
+     * keeps running in the background.
+     */
+    private PendingIntent flagFallAlarm;
+
+    /** When onCreate() was called, in elapsedRealtime milliseconds. */
+    private long createTime;
+
+    /** Measures refresh and press latencies. */
+    private LatencyMonitor latency;
+    private ThinkTimeOverlay thinkTime;
+
+    /** When the scheduled clock refresh is due, in System.nanoTime(). */
+    private long tickDue;
+
+    /**
+     * When the touch that switches the clocks happened, in uptime
+     * milliseconds, or 0.
+     */
+    private long touchTime = 0;
+
+    /** When the clocks were last switched by a touch, in uptime ms. */
+    private long lastTouchSwitch = 0;
+
+    /** Formats and displays the clocks. */
+    private TimeFormatter formatter = new TimeFormatter();
+    private ClockRenderer renderer;
+
+    /** Views, looked up once when the activity is created. */
+    private Button[] buttons;
+    private ClockView[] clocks;
+    private View[] lights;
+    private Button pause;
+    private Button menu;
 
     /** Provide haptic feedback to the user of the given view. */
     private void performHapticFeedback(View v) {
@@ -141,118 +264,377 @@ public class ChessClock extends Activity {
     /** Called when the activity is first created. */
     @Override
     public void onCreate(Bundle savedInstanceState) {
-        super.onCreate(savedInstanceState);    
+        createTime = SystemClock.elapsedRealtime();
+
+        // Get the disk going first. On a cold start, the preferences file is
+        // read on a thread of SharedPreferences' own, starting here, and the
+        // journals are opened on another.
+        SharedPreferences prefs = PreferenceManager
+            .getDefaultSharedPreferences(this);
+        journalsOpening = openJournals(!freshGame);
+        freshGame = false;
+
+        super.onCreate(savedInstanceState);
 
         /** Get rid of the status bar */
         requestWindowFeature(Window.FEATURE_NO_TITLE);
 
         getWindow().addFlags(WindowManager.LayoutParams.FLAG_FULLSCREEN);
 
-        setContentView(R.layout.main);
-        
+        // Reuse the snapshot of an earlier instance, unless it's stale. The
+        // layout depends on it, so on a cold start this waits for the
+        // preferences file to be read.
+        if (cachedConfig == null || cachedConfigStale) {
+            cachedConfig = GameConfig.fromPreferences(prefs);
+            cachedConfigStale = false;
+        }
+        config = cachedConfig;
+        prefs.registerOnSharedPreferenceChangeListener(prefsListener);
+
+        setContentView(config.bughouse ? R.layout.main_bughouse : R.layout.main);
+
+        int boards = config.bughouse ? 2 : 1;
+        engines = new ClockEngine[boards];
+        journals = new GameJournal[boards];
+        buttons = new Button[boards * 2];
+        clocks = new ClockView[boards * 2];
+        lights = new View[boards * 2];
+        for (int board = 0; board < boards; board++) {
+            engines[board] = new ClockEngine(ELAPSED_REALTIME);
+        }
+        for (int clock = 0; clock < buttons.length; clock++) {
+            buttons[clock] = (Button)findViewById(BUTTON_IDS[clock]);
+            clocks[clock] = (ClockView)findViewById(CLOCK_IDS[clock]);
+            lights[clock] = (View)findViewById(LIGHT_IDS[clock]);
+        }
+        pause = (Button)findViewById(R.id.Pause);
+        menu = (Button)findViewById(R.id.Menu);
+        renderer = new ClockRenderer(formatter, clocks);
+        latency = new LatencyMonitor((TextView)findViewById(R.id.Latency));
+        thinkTime = new ThinkTimeOverlay(
+            (TextView)findViewById(R.id.ThinkTime), engines);
+
+        // The clocks start out showing a new game, and the game in the
+        // journals replaces it once they're open
         setUpGame(true);
+
+        // Everything else waits until the clocks are on screen
+        Choreographer.getInstance().postFrameCallback(
+            new Choreographer.FrameCallback() {
+                public void doFrame(long frameTimeNanos) {
+                    // Runs once this first frame has been drawn
+                    myHandler.post(deferredInit);
+                }
+            });
+    }
+
+    /**
+     * The part of the start up that isn't needed to show the clocks: loading
+     * the alert sound, and setting up the flag fall alarm. Until it has run,
+     * there's no alert and the game can't keep running in the background.
+     */
+    private Runnable deferredInit = new Runnable() {
+        public void run() {
+            if (isDestroyed()) {
+                return;
+            }
+            long firstFrameTime = SystemClock.elapsedRealtime();
+
+            alert = new AlertPlayer(ChessClock.this);
+            alert.load(config.alertTone);
+
+            flagFallAlarm = PendingIntent.getBroadcast(
+                ChessClock.this, 0,
+                new Intent(FLAG_FALL_ACTION).setPackage(getPackageName()), 0);
+            registerReceiver(
+                flagFallReceiver, new IntentFilter(FLAG_FALL_ACTION));
+            updateArbiterLink();
+            loadPresets();
+
+            // Only debuggable builds run the benchmark, since any app can
+            // start the activity with the extra
+            int benchmarkGames =
+                getIntent().getIntExtra(HistoryBenchmark.EXTRA_GAMES, 0);
+            boolean debuggable = (getApplicationInfo().flags
+                                  & ApplicationInfo.FLAG_DEBUGGABLE) != 0;
+            if (benchmarkGames > 0 && debuggable) {
+                HistoryBenchmark.start(getApplicationContext(), benchmarkGames);
+            }
+
+            reportFullyDrawn();
+            reportStartup(firstFrameTime, SystemClock.elapsedRealtime());
+        }
+    };
+
+    /** Start reading the user's presets in the background, if not done. */
+    private void loadPresets() {
+        if (presets != null) {
+            return;
+        }
+
+        final PresetStore store = new PresetStore(
+            new File(getFilesDir(), PRESETS_FILE));
+        presets = store;
+        new Thread(new Runnable() {
+            public void run() {
+                try {
+                    store.load();
+                } catch (IOException ex) {
+                    Log.e(TAG, "Couldn't read the presets, starting without"
+                          + " them", ex);
+                }
+            }
+        }).start();
+    }
+
+    /**
+     * Log how long the start up took, from the process starting (where
+     * known) or onCreate(), to the first frame and to being fully set up.
+     * See "make startup".
+     */
+    private void reportStartup(long firstFrameTime, long interactiveTime) {
+        long start = createTime;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N
+                && Process.getStartElapsedRealtime() > 0) {
+            start = Process.getStartElapsedRealtime();
+        }
+
+        Log.i(STARTUP_TAG, "process to onCreate: " + (createTime - start)
+              + " ms, first frame: " + (firstFrameTime - start)
+              + " ms, interactive: " + (interactiveTime - start) + " ms");
     }
     
     @Override
     public void onPause() {
+        resumed = false;
         stopAlert();
-    	PauseGame();
+        leaveForeground();
     	super.onPause();
     }
+
+    /**
+     * Keep a running clock going in the background, if that's on, or else
+     * pause the game.
+     */
+    private void leaveForeground() {
+        if (config.keepRunning && flagFallAlarm != null
+                && running() && !timeup) {
+            // Keep the clock running without refreshing it, and only wake
+            // up if the flag falls
+            stopTicks();
+            recordGame();
+            setFlagFallAlarm();
+        } else {
+            PauseGame();
+        }
+    }
     
     @Override
     public void onResume() {
+        resumed = true;
         stopAlert();
+        cancelFlagFallAlarm();
+
+        // Catch up with clocks that kept running in the background
+        if (running() && !timeup && tick()) {
+            for (int board = 0; board < engines.length; board++) {
+                if (engines[board].onTheClock() != 0) {
+                    showRunning(board);
+                }
+            }
+        }
 	    super.onResume();
     }
     
     @Override
     public void onDestroy() {
-        stopAlert();
+        if (alert != null) {
+            alert.release();
+            cancelFlagFallAlarm();
+            unregisterReceiver(flagFallReceiver);
+        }
+        if (arbiter != null) {
+            arbiter.close();
+        }
+        PreferenceManager.getDefaultSharedPreferences(this)
+            .unregisterOnSharedPreferenceChangeListener(prefsListener);
     	super.onDestroy();
     }
 
-    /** Return the init time for a player based on the preferences. */
-    private int initTime(int player) {
-        return differentInitTime
-            ? player == 1 ? initTime1 : initTime2
-            : initTime1;
+    /**
+     * Start opening the journals of both boards on a new thread, and return
+     * the task. A journal that can't be opened is left null. Once they're
+     * open, the game is recovered from them on the main thread, unless a
+     * new game is wanted.
+     */
+    private FutureTask<GameJournal[]> openJournals(final boolean recover) {
+        FutureTask<GameJournal[]> task = new FutureTask<GameJournal[]>(
+            new Callable<GameJournal[]>() {
+                public GameJournal[] call() {
+                    GameJournal[] opened = new GameJournal[2];
+                    // The clocks run on the uptime, which starts at boot
+                    long boot = System.currentTimeMillis()
+                        - SystemClock.elapsedRealtime();
+                    for (int board = 0; board < opened.length; board++) {
+                        try {
+                            opened[board] = new GameJournal(new File(
+                                getFilesDir(),
+                                board == 0 ? JOURNAL_FILE : JOURNAL_FILE_2),
+                                boot);
+                        } catch (IOException ex) {
+                            Log.e(TAG, "Couldn't open the game journal", ex);
+                        }
+                    }
+                    return opened;
+                }
+            }) {
+            @Override
+            protected void done() {
+                // Not before onCreate() has returned, since this posts to
+                // the main thread
+                myHandler.post(new Runnable() {
+                    public void run() {
+                        if (!isDestroyed()) {
+                            recoverGame(recover);
+                        }
+                    }
+                });
+            }
+        };
+        new Thread(task, "Journals").start();
+        return task;
     }
 
-    /** Return time in milliseconds based on the specified unit. */
-    private int toMillis(int time, String timeUnit) {
-        if (timeUnit.equals(HOURS)) {
-            return time * 60 * 60 * 1000;
-        } else if (timeUnit.equals(MINUTES)) {
-            return time * 60 * 1000;
-        } else if (timeUnit.equals(SECONDS)) {
-            return time * 1000;
-        } else {
-            throw new java.lang.RuntimeException("Invalid timeUnit: " + timeUnit);
+    /** Return the journals, once they're open. */
+    private GameJournal[] openedJournals() {
+        try {
+            return journalsOpening.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ex) {
+            Log.e(TAG, "Couldn't open the game journals", ex);
+        }
+        return new GameJournal[2];
+    }
+
+    /**
+     * Take the journals, and unless a new game is wanted, continue the game
+     * from them, as it was when the process last ran. A clock that was
+     * running then has kept running since. A game played with another time
+     * control than the one in the settings is discarded, since the engines
+     * and the game's history record are set up with the settings.
+     */
+    private void recoverGame(boolean recover) {
+        boolean recovered = false;
+        GameJournal[] opened = openedJournals();
+        recovering = false;
+
+        for (int board = 0; board < engines.length; board++) {
+            journals[board] = opened[board];
+            if (journals[board] == null) {
+                continue;
+            }
+
+            if (recover && journals[board].recover(engines[board])) {
+                recovered = true;
+            } else {
+                journals[board].reset(engines[board]);
+            }
+        }
+
+        if (!recovered) {
+            return;
+        }
+
+        refreshClocks();
+        thinkTime.refresh();
+        for (int board = 0; board < engines.length; board++) {
+            int savedOTC = engines[board].savedOTC();
+            if (savedOTC != 0) {
+                showPaused();
+                lights[clock(board, savedOTC)].setVisibility(View.VISIBLE);
+            }
+        }
+        // After the paused boards, since showPaused() stops the ticks
+        for (int board = 0; board < engines.length; board++) {
+            if (engines[board].onTheClock() != 0) {
+                showRunning(board);
+            }
+        }
+        broadcastGame();
+
+        // The activity may have been left before the journals were open
+        if (!resumed) {
+            leaveForeground();
         }
     }
 
-    // Set the given clock to the given time + delay
-    private void setClock(TextView clock, long time, long bronsteinDelay) {
-        String delayTime = formatTime(bronsteinDelay, true);
-        String delayString = bronsteinDelay > 0
-            ? (showDeciseconds ? "\n" : "") + "+" + delayTime
-            : "";
-        clock.setText(formatTime(time) + delayString);
+    /** Return the number of the given board's clock of the given player. */
+    private static int clock(int board, int player) {
+        return board * 2 + player - 1;
     }
 
-    private void setClock(TextView clock, long time) {
-        setClock(clock, time, 0);
+    /** Return true if any clock is running. */
+    private boolean running() {
+        for (ClockEngine engine : engines) {
+            if (engine.onTheClock() != 0) {
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
-     * Format the provided time to a readable string.
-     * @param t - time, in milliseconds
-     * @param compact - whether or not to use compact format
+     * Set an exact alarm for when the first running player's flag falls.
+     * This is the only wakeup while the clock is running in the background.
      */
-    private String formatTime(long t, boolean compact) {
-        //If not displaying deciseconds, round up to the nearest second.
-        if (!showDeciseconds) {
-            t = (long)Math.ceil(t / 1000.0) * 1000;
+    private void setFlagFallAlarm() {
+        AlarmManager alarms =
+            (AlarmManager)getSystemService(Context.ALARM_SERVICE);
+        long flagFall = Long.MAX_VALUE;
+        for (ClockEngine engine : engines) {
+            flagFall = Math.min(flagFall, engine.flagFallNanos());
         }
+        long at = (flagFall + 999999) / 1000000;
 
-        int deciseconds = (int)(t / 100) % 10;
-        int seconds = (int)(t / 1000) % 60;
-        int minutes = (int)(t / 1000 / 60) % 60;
-        int hours = (int)(t / 1000 / 60 / 60);
-
-        if (hours > 0) {
-            return String.format("%d:%02d:%02d", hours, minutes, seconds);
-        } else if (minutes > 0) {
-            return String.format("%d:%02d", minutes, seconds);
-        } else if (showDeciseconds && (seconds < SHOW_DECISECONDS_THRESHOLD)) {
-            String format = compact ? "%d.%d" : "0:%02d.%d";
-            return String.format(format, seconds, deciseconds);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            alarms.setExactAndAllowWhileIdle(
+                AlarmManager.ELAPSED_REALTIME_WAKEUP, at, flagFallAlarm);
         } else {
-            String format = compact ? "%d": "0:%02d";
-            return String.format(format, seconds);
+            alarms.setExact(
+                AlarmManager.ELAPSED_REALTIME_WAKEUP, at, flagFallAlarm);
         }
     }
 
-    private String formatTime(long t) {
-        return formatTime(t, false);
-    }
+    private void cancelFlagFallAlarm() {
+        if (flagFallAlarm == null) {
+            return;
+        }
 
-    private void initRingtone() {
-        Uri uri = Uri.parse(alertTone);
-        ringtone = RingtoneManager.getRingtone(getBaseContext(), uri);
+        AlarmManager alarms =
+            (AlarmManager)getSystemService(Context.ALARM_SERVICE);
+        alarms.cancel(flagFallAlarm);
     }
 
+    /** Handles the flag fall alarm, by refreshing the running clocks. */
+    private BroadcastReceiver flagFallReceiver = new BroadcastReceiver() {
+        public void onReceive(Context context, Intent intent) {
+            if (running() && !timeup && tick()) {
+                // Not quite there yet
+                setFlagFallAlarm();
+            }
+        }
+    };
+
     private void playAlert() {
-        initRingtone();
-        if (ringtone != null) {
-            ringtone.play();
+        if (alert != null) {
+            alert.play();
         }
     }
 
     private void stopAlert() {
-        if (ringtone != null && ringtone.isPlaying()) {
-            ringtone.stop();
+        if (alert != null) {
+            alert.stop();
         }
     }
 
@@ -282,29 +664,31 @@ public class ChessClock extends Activity {
 		return dialog;
 	}
 	
-	/** Click handler for player 1's clock. */
-	public OnClickListener P1ClickHandler = new OnClickListener() {
-		public void onClick(View v) {
-            if (onTheClock == 1 || onTheClock == 0) {
-                performHapticFeedback(v);
+    /** Click handler for all the clocks. */
+    public OnClickListener ClockClickHandler = new OnClickListener() {
+        public void onClick(View v) {
+            if (recovering) {
+                return;
             }
-			P1Click();
-		}
-	};
-	
-	/** Click handler for player 2's clock */
-	public OnClickListener P2ClickHandler = new OnClickListener() {
-		public void onClick(View v) {
-            if (onTheClock == 2 || onTheClock == 0) {
+            int clock = 0;
+            while (buttons[clock] != v) {
+                clock++;
+            }
+
+            int onTheClock = engines[clock / 2].onTheClock();
+            if (onTheClock == clock % 2 + 1 || onTheClock == 0) {
                 performHapticFeedback(v);
             }
-			P2Click();
-		}
-	};
+            pressClock(clock);
+        }
+    };
 	
 	/** Click handler for the pause button */
 	public OnClickListener PauseListener = new OnClickListener() {
 		public void onClick(View v) {
+            if (recovering) {
+                return;
+            }
             performHapticFeedback(v);
             PauseToggle();
 		}
@@ -313,33 +697,181 @@ public class ChessClock extends Activity {
     /** Click handler for the menu button */
     public OnClickListener MenuListener = new OnClickListener() {
         public void onClick(View v) {
+            if (recovering) {
+                return;
+            }
             performHapticFeedback(v);
             showPrefs();
         }
     };
 
+    /** Long-click handler for the menu button */
+    public OnLongClickListener MenuLongListener = new OnLongClickListener() {
+        public boolean onLongClick(View v) {
+            if (presets == null || recovering) {
+                // Not set up yet
+                return false;
+            }
+            performHapticFeedback(v);
+            showPresets();
+            return true;
+        }
+    };
+
+    /**
+     * Show the presets to choose from, followed by the choice to save the
+     * current time control as a preset, and to delete one.
+     */
+    private void showPresets() {
+        PauseGame();
+
+        final List<Preset> all = presets.presets();
+        final boolean canDelete = !presets.userPresets().isEmpty();
+        CharSequence[] items = new CharSequence[
+            all.size() + (canDelete ? 2 : 1)];
+        for (int i = 0; i < all.size(); i++) {
+            items[i] = all.get(i).name;
+        }
+        items[all.size()] = getString(R.string.dialog_item_save_preset);
+        if (canDelete) {
+            items[all.size() + 1] =
+                getString(R.string.dialog_item_delete_preset);
+        }
+
+        new AlertDialog.Builder(this)
+            .setTitle(R.string.dialog_title_presets)
+            .setItems(items, new DialogInterface.OnClickListener() {
+                public void onClick(DialogInterface dialog, int which) {
+                    if (which < all.size()) {
+                        applyPreset(all.get(which));
+                    } else if (which == all.size()) {
+                        showSavePreset();
+                    } else {
+                        showDeletePreset();
+                    }
+                }
+            })
+            .show();
+    }
+
+    /**
+     * Switch to the given preset's time control and reset the clocks. The
+     * preset is already resolved, so this is a single set up; the
+     * preferences are updated to match without being read back.
+     */
+    private void applyPreset(Preset preset) {
+        config = config.withPreset(preset);
+        cachedConfig = config;
+        cachedConfigStale = false;
+        setUpGame(true);
+
+        Editor editor = PreferenceManager
+            .getDefaultSharedPreferences(this).edit();
+        config.putTimeControl(editor);
+        prefsSelfEdit = true;
+        editor.apply();
+        prefsSelfEdit = false;
+    }
+
+    /** Ask for a name, and save the current time control under it. */
+    private void showSavePreset() {
+        final EditText name = new EditText(this);
+        name.setSingleLine();
+
+        new AlertDialog.Builder(this)
+            .setTitle(R.string.dialog_title_preset_name)
+            .setView(name)
+            .setPositiveButton(
+                R.string.dialog_button_save,
+                new DialogInterface.OnClickListener() {
+                    public void onClick(DialogInterface dialog, int id) {
+                        String text = name.getText().toString().trim();
+                        if (text.length() > 0) {
+                            storePreset(config.toPreset(text), null);
+                        }
+                    }
+                })
+            .setNegativeButton(
+                R.string.dialog_button_cancel,
+                new DialogInterface.OnClickListener() {
+                    public void onClick(DialogInterface dialog, int id) {
+                        dialog.cancel();
+                    }
+                })
+            .show();
+    }
+
+    /** Show the user's presets, and delete the one chosen. */
+    private void showDeletePreset() {
+        final List<Preset> user = presets.userPresets();
+        CharSequence[] items = new CharSequence[user.size()];
+        for (int i = 0; i < items.length; i++) {
+            items[i] = user.get(i).name;
+        }
+
+        new AlertDialog.Builder(this)
+            .setTitle(R.string.dialog_title_delete_preset)
+            .setItems(items, new DialogInterface.OnClickListener() {
+                public void onClick(DialogInterface dialog, int which) {
+                    storePreset(null, user.get(which).name);
+                }
+            })
+            .show();
+    }
+
+    /**
+     * Add the given preset, or remove the named one, writing the presets in
+     * the background.
+     */
+    private void storePreset(final Preset add, final String remove) {
+        final PresetStore store = presets;
+        new Thread(new Runnable() {
+            public void run() {
+                try {
+                    if (add != null) {
+                        store.add(add);
+                    } else {
+                        store.remove(remove);
+                    }
+                } catch (IOException ex) {
+                    Log.e(TAG, "Couldn't save the presets", ex);
+                    runOnUiThread(new Runnable() {
+                        public void run() {
+                            Toast.makeText(
+                                ChessClock.this,
+                                R.string.toast_presets_failed,
+                                Toast.LENGTH_SHORT).show();
+                        }
+                    });
+                }
+            }
+        }).start();
+    }
+
 	/** Starts the Preferences menu intent */
 	private void showPrefs() {
+        // The preferences may change the game, so don't let it run
+        PauseGame();
 		Intent prefsActivity = new Intent(ChessClock.this, Prefs.class);
 		startActivity(prefsActivity);
 	}
 
-    /** Return an integer preference. */
-    private int getIntPref(String pref, int fallback) {
-        SharedPreferences prefs = PreferenceManager
-            .getDefaultSharedPreferences(this);
-
-        try {
-            return Integer.parseInt(
-                prefs.getString(pref, Integer.toString(fallback))
-            );
-        } catch (Exception ex) {
-            Editor e = prefs.edit();
-            e.putString(pref, Integer.toString(fallback));
-            e.commit();
-            return fallback;
-        }
-    }
+    /**
+     * Takes note of changes to the preferences. They're read once we're back
+     * in focus, no matter how many of them were changed.
+     */
+    private SharedPreferences.OnSharedPreferenceChangeListener prefsListener =
+        new SharedPreferences.OnSharedPreferenceChangeListener() {
+            public void onSharedPreferenceChanged(SharedPreferences prefs,
+                                                  String key) {
+                if (prefsSelfEdit) {
+                    // Already applied
+                    return;
+                }
+                prefsChanged = true;
+                cachedConfigStale = true;
+            }
+        };
 
 	/** 
 	 * Checks for changes to the current preferences. We only want
@@ -347,53 +879,36 @@ public class ChessClock extends Activity {
 	 * check for differences any time onWindowFocusChanged() is called.
 	 */
 	public void CheckForNewPrefs() {
-		SharedPreferences prefs = PreferenceManager
-    	.getDefaultSharedPreferences(this);
-		
-		alertTone = prefs.getString("prefAlertSound", Settings.System.DEFAULT_RINGTONE_URI.toString());
-		
-        /** Check for new game time settings. */
-        if (!prefs.getString("prefInitTimeUnits", MINUTES).equals(initTimeUnits)) {
-            setUpGame(true);
-        };
-
-        if (getIntPref("prefInitTime1", 10) != initTime1
-              || getIntPref("prefInitTime2", 10) != initTime2) {
-            setUpGame(true);
+        if (!prefsChanged) {
+            return;
         }
+        prefsChanged = false;
 
-        if (prefs.getBoolean("prefDifferentInitTime", false) != differentInitTime) {
-            setUpGame(true);
-        }
+        GameConfig old = config;
+        config = GameConfig.fromPreferences(
+            PreferenceManager.getDefaultSharedPreferences(this));
+        cachedConfig = config;
+        cachedConfigStale = false;
 
-        /** Check for new delay settings. */
-        if (!prefs.getString("prefDelay", NO_DELAY).equals(delay)){
-            setUpGame(true);
+        if (!config.alertTone.equals(old.alertTone) && alert != null) {
+            alert.load(config.alertTone);
         }
-
-        if (!prefs.getString("prefDelayTimeUnits", SECONDS).equals(delayTimeUnits)) {
-            setUpGame(true);
-        };
-
-        if (getIntPref("prefDelayTime", 0) != delay_time) {
-            setUpGame(true);
+        if (!config.sameBroadcast(old) && alert != null) {
+            updateArbiterLink();
         }
 
-		boolean new_haptic = prefs.getBoolean("prefHaptic", false);
-		if ( new_haptic != haptic ) {
-			// No reason to reload the clocks for this one
-            setUpGame(false);
-		}
-
-        boolean new_bb = prefs.getBoolean("prefBlackBackground", false);
-        if (new_bb != blackBackground) {
+        // Reconfigure once, and only as much as needed
+        if (config.bughouse != old.bughouse) {
+            // Another layout and number of boards, so start over
+            recordHistory();
+            freshGame = true;
+            recreate();
+        } else if (!config.sameTimeControl(old)) {
+            setUpGame(true);
+        } else if (!config.sameDisplay(old)) {
             // No reason to reload the clocks for this one
             setUpGame(false);
         }
-
-        if (prefs.getBoolean("prefShowDeciseconds", true) != showDeciseconds) {
-            setUpGame(false);
-        }
     }
 	
 	/** Creates and displays the "Reset Clocks" alert dialog */
@@ -421,344 +936,463 @@ public class ChessClock extends Activity {
 		return alert;
 	}
 	
-	/** Called when P1ClickHandler registers a click/touch event */
-	private void P1Click() {
-        if (onTheClock == 2) {
+    /**
+     * Called when a clock is pressed. The opponent's clock on that board
+     * starts running, and the other board, if it's stopped, is started or
+     * resumed along with it.
+     */
+    private void pressClock(int clock) {
+        int board = clock / 2;
+        int player = clock % 2 + 1;
+        ClockEngine engine = engines[board];
+        boolean stopped = engine.onTheClock() == 0;
+
+        if (!engine.press(player, pressTime())) {
             return;
         }
+        if (stopped) {
+            startLinkedBoards(board, player);
+        }
+        recordGame();
+
+        int opponent = ClockEngine.opponent(player);
+        renderer.render(clock, engine.remaining(player));
+        renderer.render(clock(board, opponent), engine.remaining(opponent),
+                        engine.delay());
+        showRunning(board);
+        recordSwitch();
+        thinkTime.refresh();
+    }
+
+    /**
+     * Start or resume the stopped boards other than the given one, where
+     * the given player just started their opponent's clock. Paused boards
+     * resume with the clock that was running. At the start of a game, the
+     * other board starts with the clock on the other side running, since
+     * partners sit side by side playing opposite colors.
+     */
+    private void startLinkedBoards(int board, int player) {
+        for (int other = 0; other < engines.length; other++) {
+            ClockEngine engine = engines[other];
+            if (other == board || engine.onTheClock() != 0) {
+                continue;
+            }
+
+            if (engine.savedOTC() != 0) {
+                engine.press(ClockEngine.opponent(engine.savedOTC()));
+            } else {
+                engine.press(ClockEngine.opponent(player));
+            }
+            refreshBoard(other);
+            showRunning(other);
+        }
+    }
 
-        TextView p1 = (TextView)findViewById(R.id.t_Player1);
-        TextView p2 = (TextView)findViewById(R.id.t_Player2);
-        View l1 = (View)findViewById(R.id.l_Player1);
-        View l2 = (View)findViewById(R.id.l_Player2);
+    /**
+     * Touch handler for both clocks. Normally it only remembers when a
+     * clock was released, to measure the press latency, and lets the click
+     * through. With "Switch on Touch", it switches the clocks as soon as a
+     * clock is touched instead, and swallows the rest of the touch. Touches
+     * within the debounce time after a switch are ignored, so that a
+     * bouncing finger or a resting palm doesn't switch the clocks back.
+     */
+    public View.OnTouchListener ClockTouchListener = new View.OnTouchListener() {
+        public boolean onTouch(View v, MotionEvent event) {
+            int action = event.getActionMasked();
 
-        if ((delay.equals(FISCHER) || delay.equals(CAPPED_FISCHER))
-                && (onTheClock == 1 || savedOTC == 1)) {
-            t_P1 += toMillis(delay_time, delayTimeUnits);
+            if (!config.touchDown) {
+                if (action == MotionEvent.ACTION_UP) {
+                    touchTime = event.getEventTime();
+                }
+                return false;
+            }
 
-            if (delay.equals(CAPPED_FISCHER)) {
-                t_P1 = Math.min(t_P1, toMillis(initTime(1), initTimeUnits));
+            // Clocks are made unclickable when a flag falls
+            if (action == MotionEvent.ACTION_DOWN && v.isClickable()
+                    && event.getEventTime() - lastTouchSwitch
+                       >= config.touchDebounce) {
+                touchTime = event.getEventTime();
+                ClockClickHandler.onClick(v);
+                // A switch clears the touch time, see recordSwitch()
+                if (touchTime == 0) {
+                    lastTouchSwitch = event.getEventTime();
+                } else {
+                    touchTime = 0;
+                }
             }
+            return true;
+        }
+    };
 
-            setClock(p1, t_P1);
+    /**
+     * Return when the press being handled happened, on the engine's clock.
+     * That's the time of the touch event, so that the mover isn't charged
+     * for the time the press waited to be handled. Presses that don't come
+     * from a touch (such as from a keyboard) are taken to happen now.
+     */
+    private long pressTime() {
+        long now = SystemClock.elapsedRealtimeNanos();
+        if (touchTime == 0) {
+            return now;
         }
 
-        if (delay.equals(BRONSTEIN)) {
-            setClock(p1, t_P1);
-            setClock(p2, t_P2, (savedOTC == 2) ? b_delay : toMillis(delay_time, delayTimeUnits));
+        // Event times are in uptime milliseconds
+        return now - (SystemClock.uptimeMillis() - touchTime) * 1000000;
+    }
+
+    /** Record how long it took from releasing a clock until it switched. */
+    private void recordSwitch() {
+        if (touchTime != 0) {
+            latency.recordTouchToSwitch(
+                (SystemClock.uptimeMillis() - touchTime) * 1000000);
+            touchTime = 0;
         }
+        latency.refresh();
+    }
 
-        // Register that player 2's time is running now
-        onTheClock = 2;
-        // Unless we're unpausing player 2, reset their delayed status
-        delayed = delayed && (savedOTC == 2);
-        savedOTC = 0;
+    /**
+     * Show the running clock of the given board as running, and its other
+     * clock as waiting, and reschedule the refresh of the running clocks.
+     */
+    private void showRunning(int board) {
+        int player = engines[board].onTheClock();
+        int clock = clock(board, player);
+        int other = clock(board, ClockEngine.opponent(player));
 
-        p2.setTextColor(color(R.color.active_text));
-        p1.setTextColor(color(R.color.inactive_text));
-        l2.setBackgroundColor(color(R.color.highlight));
-        l1.setVisibility(View.INVISIBLE);
-        l2.setVisibility(View.VISIBLE);
-		
-        Button pp = (Button)findViewById(R.id.Pause);
-        pp.setBackgroundResource(R.drawable.pause_button);
+        clocks[clock].setTextColor(color(R.color.active_text));
+        clocks[other].setTextColor(color(R.color.inactive_text));
+        lights[clock].setBackgroundColor(color(R.color.highlight));
+        lights[other].setVisibility(View.INVISIBLE);
+        lights[clock].setVisibility(View.VISIBLE);
 
-        /**
-         * Unregister the handler from player 1's clock and create a new one
-         * which we register with player 2's clock.
-         */
-        myHandler.removeCallbacks(mUpdateTimeTask);
-        myHandler.removeCallbacks(mUpdateTimeTask2);
-        myHandler.postDelayed(mUpdateTimeTask2, TICK_LENGTH);
-	}
+        pause.setBackgroundResource(R.drawable.pause_button);
 
-    /** Return true if out of time. */
-    private boolean outOfTime(long timeLeft) {
-        if (delay.equals(BRONSTEIN)) {
-            return timeLeft + b_delay == 0;
+        stopTicks();
+        scheduleTick();
+    }
+
+    /** Show all clocks as paused, and stop refreshing them. */
+    private void showPaused() {
+        for (int clock = 0; clock < clocks.length; clock++) {
+            clocks[clock].setTextColor(color(R.color.inactive_text));
+            lights[clock].setBackgroundColor(color(R.color.inactive_text));
         }
+        pause.setBackgroundResource(R.drawable.reset_button);
 
-        return timeLeft == 0;
+        stopTicks();
     }
 
-    /** Handles the "tick" event for Player 1's clock */
-    private Runnable mUpdateTimeTask = new Runnable() {
-        public void run() {
-            Button b1 = (Button)findViewById(R.id.Player1);
-            Button b2 = (Button)findViewById(R.id.Player2);
-            TextView p1 = (TextView)findViewById(R.id.t_Player1);
-            TextView p2 = (TextView)findViewById(R.id.t_Player2);
-
-            // Check for delays and apply them
-            if (delay.equals(BRONSTEIN)){
-                if (delayed) {
-                    b_delay = Math.max(0, b_delay - TICK_LENGTH);
-                } else {
-                    delayed = true;
-                    b_delay = toMillis(delay_time, delayTimeUnits);
-                }
-                // If delay remaining, negate tick
-                t_P1 += (b_delay > 0) ? TICK_LENGTH : 0;
+    /**
+     * Save the state of the game to the journals, where there are any, and
+     * broadcast it if that's on.
+     */
+    private void recordGame() {
+        for (int board = 0; board < engines.length; board++) {
+            if (journals[board] != null) {
+                journals[board].record(engines[board]);
+            }
+        }
+        broadcastGame();
+    }
+
+    /**
+     * Queue the games on the clocks to be written to the history, as they're
+     * about to be reset. A game is recorded once, when it's reset, whether
+     * it ended by a flag fall or not, but one ended by a flag fall is
+     * recorded as finished when the flag fell. On both boards of a bughouse
+     * game, that's when the first flag fell. A game with no moves is only
+     * recorded if it ended by a flag fall.
+     */
+    private void recordHistory() {
+        long finished = System.currentTimeMillis();
+        long flagFell = Long.MAX_VALUE;
+        for (ClockEngine engine : engines) {
+            flagFell = Math.min(flagFell, engine.flagFellNanos());
+        }
+        if (flagFell != Long.MAX_VALUE) {
+            finished -= (ELAPSED_REALTIME.nanoTime() - flagFell) / 1000000;
+        }
+
+        for (int board = 0; board < engines.length; board++) {
+            if (engines[board].moveLog().size() == 0
+                    && engines[board].flagFellNanos() == Long.MAX_VALUE) {
+                continue;
+            }
+            if (history == null) {
+                history = new GameHistory(
+                    getApplicationContext(), GameHistory.DATABASE);
             }
+            history.record(GameHistory.Game.of(
+                engines[board], gameTimeControl, board, finished));
+        }
+    }
 
-            // Deduct tick from P1's clock
-            if (t_P1 > 0) {
-                t_P1 -= TICK_LENGTH;
+    private void broadcastGame() {
+        if (arbiter != null) {
+            for (int board = 0; board < engines.length; board++) {
+                arbiter.publish(board, engines[board]);
             }
-            setClock(p1, t_P1, b_delay);
+        }
+    }
 
-            if (outOfTime(t_P1)) {
-                timeup = true;
-                Button pp = (Button)findViewById(R.id.Pause);
-                View l1 = (View)findViewById(R.id.l_Player1);
+    /** Open or close the link to arbiter screens, as configured. */
+    private void updateArbiterLink() {
+        if (arbiter != null) {
+            arbiter.close();
+            arbiter = null;
+        }
+        if (config.broadcast) {
+            arbiter = new ArbiterLink(config.board);
+            broadcastGame();
+        }
+    }
 
-                l1.setBackgroundColor(color(R.color.timesup));
-                performHapticFeedback(l1);
+    /**
+     * Return how long to wait until the given board's running clock needs
+     * to be refreshed, in milliseconds. That is when the displayed digits of
+     * the time or Bronstein delay change next, or when the flag falls.
+     */
+    private long nextTick(int board) {
+        ClockEngine engine = engines[board];
+        long delayLeft = engine.delayNanos();
+        long wait = delayLeft > 0
+            ? formatter.nanosUntilChange(delayLeft)
+            : formatter.nanosUntilChange(
+                engine.remainingNanos(engine.onTheClock()));
+
+        // Round up, so that we don't wake up right before the change
+        return (wait + 999999) / 1000000;
+    }
 
-                b1.setClickable(false);
-                b2.setClickable(false);
-                pp.setBackgroundResource(R.drawable.reset_button);
-                playAlert();
-                myHandler.removeCallbacks(mUpdateTimeTask);
-            } else {
-                // Re-post the handler so it waits until the next tick
-                myHandler.postDelayed(this, TICK_LENGTH);
+    /**
+     * Schedule the next refresh of the running clocks, as one wakeup for
+     * the clock that needs it first. In smooth countdown mode, while a
+     * running clock shows sub-second digits, they're all refreshed on every
+     * frame instead.
+     */
+    private void scheduleTick() {
+        long wait = Long.MAX_VALUE;
+        boolean everyFrame = false;
+
+        for (int board = 0; board < engines.length; board++) {
+            ClockEngine engine = engines[board];
+            int player = engine.onTheClock();
+            if (player == 0) {
+                continue;
             }
+
+            everyFrame |= config.smoothCountdown && config.showDeciseconds
+                && engine.remainingNanos(player)
+                   < TimeFormatter.SHOW_DECISECONDS_THRESHOLD * 1000000000L;
+            wait = Math.min(wait, nextTick(board));
         }
-    };
-	
-	/** Called when P2ClickHandler registers a click/touch event */
-	private void P2Click() {
-        if (onTheClock == 1) {
+
+        if (wait == Long.MAX_VALUE) {
             return;
         }
 
-        Button b1 = (Button)findViewById(R.id.Player1);
-        Button b2 = (Button)findViewById(R.id.Player2);
-        TextView p1 = (TextView)findViewById(R.id.t_Player1);
-        TextView p2 = (TextView)findViewById(R.id.t_Player2);
-        View l1 = (View)findViewById(R.id.l_Player1);
-        View l2 = (View)findViewById(R.id.l_Player2);
+        if (everyFrame) {
+            Choreographer.getInstance().postFrameCallback(mFrameCallback);
+        } else {
+            tickDue = System.nanoTime() + wait * 1000000;
+            myHandler.postDelayed(mUpdateTimeTask, wait);
+        }
+    }
 
-        if ((delay.equals(FISCHER) || delay.equals(CAPPED_FISCHER))
-                && (onTheClock == 2 || savedOTC == 2)) {
-            t_P2 += toMillis(delay_time, delayTimeUnits);
+    /** Cancel any scheduled clock refresh. */
+    private void stopTicks() {
+        myHandler.removeCallbacks(mUpdateTimeTask);
+        Choreographer.getInstance().removeFrameCallback(mFrameCallback);
+    }
 
-            if (delay.equals(CAPPED_FISCHER)) {
-                t_P2 = Math.min(t_P2, toMillis(initTime(2), initTimeUnits));
+    /**
+     * Refresh the running clocks, and handle a flag falling. Return false if
+     * one fell.
+     */
+    private boolean tick() {
+        for (int board = 0; board < engines.length; board++) {
+            ClockEngine engine = engines[board];
+            int player = engine.onTheClock();
+            if (player == 0) {
+                continue;
             }
 
-            setClock(p2, t_P2);
-        }
+            // The engine keeps the time; ticks only refresh the display
+            renderer.render(clock(board, player), engine.remaining(player),
+                            engine.delay());
 
-        if (delay.equals(BRONSTEIN)) {
-            setClock(p2, t_P2);
-            setClock(p1, t_P1, (savedOTC == 1) ? b_delay : toMillis(delay_time, delayTimeUnits));
+            if (engine.outOfTime(player)) {
+                flagFell(board, player);
+                return false;
+            }
         }
 
-        // Register that player 1's time is running now
-        onTheClock = 1;
-        // Unless we're unpausing player 1, reset their delayed status
-        delayed = delayed && (savedOTC == 1);
-        savedOTC = 0;
+        return true;
+    }
 
-        p1.setTextColor(color(R.color.active_text));
-        p2.setTextColor(color(R.color.inactive_text));
-        l1.setBackgroundColor(color(R.color.highlight));
-        l1.setVisibility(View.VISIBLE);
-        l2.setVisibility(View.INVISIBLE);
+    /** End the game, as the given player's flag fell. */
+    private void flagFell(int board, int player) {
+        View l = lights[clock(board, player)];
 
-		Button pp = (Button)findViewById(R.id.Pause);
-        pp.setBackgroundResource(R.drawable.pause_button);
-		
-		/** 
-         * Unregister the handler from player 2's clock and create a new one
-         * which we register with player 1's clock.
-		 */
-		myHandler.removeCallbacks(mUpdateTimeTask);
-		myHandler.removeCallbacks(mUpdateTimeTask2);
-        myHandler.postDelayed(mUpdateTimeTask, TICK_LENGTH);
-    }
-				
-    /** Handles the "tick" event for Player 2's clock */
-    private Runnable mUpdateTimeTask2 = new Runnable() {
-        public void run() {
-            Button b1 = (Button)findViewById(R.id.Player1);
-            Button b2 = (Button)findViewById(R.id.Player2);
-            TextView p1 = (TextView)findViewById(R.id.t_Player1);
-            TextView p2 = (TextView)findViewById(R.id.t_Player2);
-
-            // Check for delays and apply them
-            if (delay.equals(BRONSTEIN)){
-                if (delayed) {
-                    b_delay = Math.max(0, b_delay - TICK_LENGTH);
-                } else {
-                    delayed = true;
-                    b_delay = toMillis(delay_time, delayTimeUnits);
-                }
-                // If delay remaining, negate tick
-                t_P2 += (b_delay > 0) ? TICK_LENGTH : 0;
-            }
+        timeup = true;
+        l.setBackgroundColor(color(R.color.timesup));
+        performHapticFeedback(l);
 
-            // Deduct tick from P2's clock
-            if (t_P2 > 0) {
-                t_P2 -= TICK_LENGTH;
+        // The game is over on the other board too
+        for (int other = 0; other < engines.length; other++) {
+            if (other != board && engines[other].onTheClock() != 0) {
+                engines[other].pause();
+                refreshBoard(other);
             }
-            setClock(p2, t_P2, b_delay);
+        }
 
-            if (outOfTime(t_P2)) {
-                timeup = true;
-                Button pp = (Button)findViewById(R.id.Pause);
-                View l2 = (View)findViewById(R.id.l_Player2);
+        for (Button b : buttons) {
+            b.setClickable(false);
+        }
+        pause.setBackgroundResource(R.drawable.reset_button);
+        playAlert();
+        stopTicks();
+        recordGame();
+    }
 
-                l2.setBackgroundColor(color(R.color.timesup));
-                performHapticFeedback(l2);
+    /**
+     * Refresh the running clocks like tick(), measuring how late the refresh
+     * is compared to the given due time (in System.nanoTime()), and how
+     * long it takes.
+     */
+    private boolean timedTick(long due) {
+        long start = System.nanoTime();
+        latency.recordTickLateness(start - due);
+        boolean running = tick();
+        latency.recordTickTime(System.nanoTime() - start);
+        return running;
+    }
 
-                b1.setClickable(false);
-                b2.setClickable(false);
-                pp.setBackgroundResource(R.drawable.reset_button);
-                playAlert();
-                myHandler.removeCallbacks(mUpdateTimeTask2);
-            } else {
-                // Re-post the handler so it waits until the next tick
-                myHandler.postDelayed(this, TICK_LENGTH);
+    /** Handles the "tick" event for all running clocks */
+    private Runnable mUpdateTimeTask = new Runnable() {
+        public void run() {
+            if (timedTick(tickDue)) {
+                // Re-post the handler so it waits until the digits change
+                scheduleTick();
             }
         }
     };
 
+    /** Handles the per-frame refresh in smooth countdown mode */
+    private Choreographer.FrameCallback mFrameCallback =
+        new Choreographer.FrameCallback() {
+            public void doFrame(long frameTimeNanos) {
+                if (running() && timedTick(frameTimeNanos)) {
+                    scheduleTick();
+                }
+            }
+        };
+
 	/** 
-	 * Pauses both clocks. This is called when the options
+	 * Pauses all clocks. This is called when the options
 	 * menu is opened, since the game needs to pause
 	 * but not un-pause, whereas PauseToggle() will switch
 	 * back and forth between the two.
 	 *  */
 	private void PauseGame() {
-        TextView p1 = (TextView)findViewById(R.id.t_Player1);
-        TextView p2 = (TextView)findViewById(R.id.t_Player2);
-        View l1 = (View)findViewById(R.id.l_Player1);
-        View l2 = (View)findViewById(R.id.l_Player2);
-		Button pp = (Button)findViewById(R.id.Pause);
-		
-		/** Save the currently running clock, then pause */
-		if ( ( onTheClock != 0 ) && ( !timeup ) ) {
-			savedOTC = onTheClock;
-			onTheClock = 0;
-			
-            p1.setTextColor(color(R.color.inactive_text));
-            p2.setTextColor(color(R.color.inactive_text));
-            l1.setBackgroundColor(color(R.color.inactive_text));
-            l2.setBackgroundColor(color(R.color.inactive_text));
-            pp.setBackgroundResource(R.drawable.reset_button);
-		
-			myHandler.removeCallbacks(mUpdateTimeTask);
-			myHandler.removeCallbacks(mUpdateTimeTask2);
+		/** Save the currently running clocks, then pause */
+		if (running() && !timeup) {
+            pauseBoards();
 		}
 	}
 	
 	/** Called when the pause button is clicked */
 	private void PauseToggle() {
-        TextView p1 = (TextView)findViewById(R.id.t_Player1);
-        TextView p2 = (TextView)findViewById(R.id.t_Player2);
-        View l1 = (View)findViewById(R.id.l_Player1);
-        View l2 = (View)findViewById(R.id.l_Player2);
-		Button pp = (Button)findViewById(R.id.Pause);
-
         /** Figure out if we need to pause or reset. */
-        if (onTheClock == 0 || outOfTime(t_P1) || outOfTime(t_P2)) {
+        if (!running() || outOfTime()) {
             Log.v(TAG, "Info: Resetting.");
             stopAlert();
             showDialog(RESET);
         } else {
-            savedOTC = onTheClock;
-            onTheClock = 0;
+            pauseBoards();
+        }
+	}
 
-            p1.setTextColor(color(R.color.inactive_text));
-            p2.setTextColor(color(R.color.inactive_text));
-            l1.setBackgroundColor(color(R.color.inactive_text));
-            l2.setBackgroundColor(color(R.color.inactive_text));
-            pp.setBackgroundResource(R.drawable.reset_button);
+    private void pauseBoards() {
+        for (ClockEngine engine : engines) {
+            engine.pause();
+        }
+        recordGame();
+        refreshClocks();
+        showPaused();
+    }
 
-            myHandler.removeCallbacks(mUpdateTimeTask);
-            myHandler.removeCallbacks(mUpdateTimeTask2);
+    /** Return true if any player is out of time. */
+    private boolean outOfTime() {
+        for (ClockEngine engine : engines) {
+            if (engine.outOfTime(1) || engine.outOfTime(2)) {
+                return true;
+            }
         }
-	}
+        return false;
+    }
 	
 	/** Set up (or refresh) all game parameters */
     private void setUpGame(boolean resetClocks) {
-	    /** Load all stored preferences */
-	    SharedPreferences prefs = PreferenceManager
-    	.getDefaultSharedPreferences(this);
-
-        TextView p1 = (TextView)findViewById(R.id.t_Player1);
-        TextView p2 = (TextView)findViewById(R.id.t_Player2);
-        p1.setTextColor(color(R.color.active_text));
-        p2.setTextColor(color(R.color.active_text));
-
-        View l1 = (View)findViewById(R.id.l_Player1);
-        View l2 = (View)findViewById(R.id.l_Player2);
-        l1.setVisibility(View.INVISIBLE);
-        l2.setVisibility(View.INVISIBLE);
-
-        /** Take care of a haptic change if needed */
-        haptic = prefs.getBoolean("prefHaptic", false);
-        Button b1 = (Button)findViewById(R.id.Player1);
-        Button b2 = (Button)findViewById(R.id.Player2);
-        Button pause = (Button)findViewById(R.id.Pause);
-        Button menu = (Button)findViewById(R.id.Menu);
-
-        b1.setHapticFeedbackEnabled(haptic);
-        b2.setHapticFeedbackEnabled(haptic);
-        pause.setHapticFeedbackEnabled(haptic);
-        menu.setHapticFeedbackEnabled(haptic);
-
-        /* Set the preferred backgroud color. */
-        blackBackground = prefs.getBoolean("prefBlackBackground", false);
-        if (blackBackground) {
-            b1.setBackgroundColor(color(R.color.bg_black));
-            b2.setBackgroundColor(color(R.color.bg_black));
-        } else {
-            b1.setBackgroundColor(color(R.color.bg_dark));
-            b2.setBackgroundColor(color(R.color.bg_dark));
-        }
+        for (int clock = 0; clock < clocks.length; clock++) {
+            clocks[clock].setTextColor(color(R.color.active_text));
+            lights[clock].setVisibility(View.INVISIBLE);
 
-        showDeciseconds = prefs.getBoolean("prefShowDeciseconds", true);
+            /** Take care of a haptic change if needed */
+            buttons[clock].setHapticFeedbackEnabled(config.haptic);
 
-        if (resetClocks) {
-            delay = prefs.getString("prefDelay", NO_DELAY);
-            initTimeUnits = prefs.getString("prefInitTimeUnits", MINUTES);
-            delayTimeUnits = prefs.getString("prefDelayTimeUnits", SECONDS);
+            /* Set the preferred backgroud color. */
+            buttons[clock].setBackgroundColor(color(
+                config.blackBackground ? R.color.bg_black : R.color.bg_dark));
+        }
+        pause.setHapticFeedbackEnabled(config.haptic);
+        menu.setHapticFeedbackEnabled(config.haptic);
 
-            differentInitTime = prefs.getBoolean("prefDifferentInitTime", false);
-            initTime1 = getIntPref("prefInitTime1", 10);
-            initTime2 = getIntPref("prefInitTime2", 10);
-            delay_time = getIntPref("prefDelayTime", 0);
+        formatter.setShowDeciseconds(config.showDeciseconds);
+        formatter.setShowHundredths(config.smoothCountdown);
+        latency.setVisible(config.latencyOverlay);
 
-            alertTone = prefs.getString("prefAlertSound", Settings.System.DEFAULT_RINGTONE_URI.toString());
-            if (alertTone.equals("")) {
-                alertTone = Settings.System.DEFAULT_RINGTONE_URI.toString();
-                Editor e = prefs.edit();
-                e.putString("prefAlertSound", alertTone);
-                e.commit();
+        if (resetClocks) {
+            recordHistory();
+            timeup = false;
+            gameTimeControl = config.timeControlName();
+            for (int board = 0; board < engines.length; board++) {
+                engines[board].setUp(config.timeControl());
+                if (journals[board] != null) {
+                    journals[board].reset(engines[board]);
+                }
             }
-
-            initRingtone();
-            onTheClock = 0;
-            savedOTC = 0;
-            delayed = false;
-
-            t_P1 = toMillis(initTime(1), initTimeUnits);
-            t_P2 = toMillis(initTime(2), initTimeUnits);
-            b_delay = delay.equals(BRONSTEIN) ? toMillis(delay_time, delayTimeUnits) : 0;
+            renderer.invalidate();
+            broadcastGame();
 
             // Register the click listeners
-            b1.setOnClickListener(P1ClickHandler);
-            b2.setOnClickListener(P2ClickHandler);
+            for (Button b : buttons) {
+                b.setOnClickListener(ClockClickHandler);
+                b.setOnTouchListener(ClockTouchListener);
+            }
             pause.setOnClickListener(PauseListener);
             menu.setOnClickListener(MenuListener);
+            menu.setOnLongClickListener(MenuLongListener);
         }
 
         // Format and display the clocks
-        setClock(p1, t_P1, (savedOTC == 1) ? b_delay : 0);
-        setClock(p2, t_P2, (savedOTC == 2) ? b_delay : 0);
+        refreshClocks();
+        thinkTime.setVisible(config.thinkTime);
 	}
+
+    /** Display the time left on all clocks. */
+    private void refreshClocks() {
+        for (int board = 0; board < engines.length; board++) {
+            refreshBoard(board);
+        }
+    }
+
+    /** Display the time left on both clocks of the given board. */
+    private void refreshBoard(int board) {
+        ClockEngine engine = engines[board];
+        for (int player = 1; player <= 2; player++) {
+            renderer.render(clock(board, player), engine.remaining(player),
+                            (engine.savedOTC() == player) ? engine.delay() : 0);
+        }
+    }
 }
@@ -0,0 +1,104 @@
+/*************************************************************************
+ * File: ClockRenderer.java
+ *
+ * Displays the clocks, touching the views only when the text changes.
+ *
+ * Created: 2026-10-18
+ *
+ * Author: Simen Heggestøyl
+ *
+ *************************************************************************
+ *
+ *   This file is part of Simple Chess Clock (SCC).
+ *
+ *   SCC is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   SCC is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with SCC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *************************************************************************/
+package com.chessclock.android;
+
+import com.chessclock.core.TimeFormatter;
+
+/**
+ * Sits between the clock engine and the clock views. Every clock keeps the
+ * text that is currently on screen, and a new time is only handed to the
+ * view when its formatted text (including the Bronstein delay suffix)
+ * differs from that. Most refreshes therefore never reach the view, and
+ * don't cause any layout work.
+ *
+ * Each new text is formatted into a scratch buffer, and copied over the
+ * clock's text when it differs. ClockView keeps a copy of its own.
+ */
+public class ClockRenderer {
+    private final TimeFormatter formatter;
+
+    /** Per clock state, indexed by clock number. */
+    private final ClockView[] clocks;
+    private final char[][] shown;
+    private final int[] shownLength;
+
+    /** The text being formatted, for any clock. */
+    private final char[] scratch = new char[TimeFormatter.MAX_LENGTH];
+
+    /** Display the times on the given views, numbered from 0. */
+    public ClockRenderer(TimeFormatter formatter, ClockView[] clocks) {
+        this.formatter = formatter;
+        this.clocks = clocks;
+        shown = new char[clocks.length][TimeFormatter.MAX_LENGTH];
+        shownLength = new int[clocks.length];
+        invalidate();
+    }
+
+    /** Display the given time + delay on the given clock. */
+    public void render(int clock, long time, long bronsteinDelay) {
+        int length = formatter.formatClock(scratch, time, bronsteinDelay);
+
+        if (sameText(scratch, length, shown[clock], shownLength[clock])) {
+            return;
+        }
+
+        System.arraycopy(scratch, 0, shown[clock], 0, length);
+        shownLength[clock] = length;
+        clocks[clock].setText(scratch, 0, length);
+    }
+
+    public void render(int clock, long time) {
+        render(clock, time, 0);
+    }
+
+    /**
+     * Make the next render of each clock update its view, and let the views
+     * size themselves to the coming texts, as for a new game.
+     */
+    public void invalidate() {
+        for (int clock = 0; clock < clocks.length; clock++) {
+            shownLength[clock] = -1;
+            clocks[clock].resetSize();
+        }
+    }
+
+    private static boolean sameText(char[] a, int aLength,
+                                    char[] b, int bLength) {
+        if (aLength != bLength) {
+            return false;
+        }
+
+        for (int i = 0; i < aLength; i++) {
+            if (a[i] != b[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+}
@@ -0,0 +1,278 @@
+/*************************************************************************
+ * File: ClockView.java
+ *
+ * Draws a clock from pre-rendered glyphs.
+ *
+ * Created: 2026-10-18
+ *
+ * Author: Simen Heggestøyl
+ *
+ *************************************************************************
+ *
+ *   This file is part of Simple Chess Clock (SCC).
+ *
+ *   SCC is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   SCC is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with SCC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *************************************************************************/
+package com.chessclock.android;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.Typeface;
+import android.util.AttributeSet;
+import android.view.View;
+
+import com.chessclock.core.TimeFormatter;
+
+/**
+ * Displays a clock from a cache of pre-rendered glyphs.
+ *
+ * The glyphs a clock can show (digits, ':', '.' and '+') are rendered once
+ * into an ALPHA_8 atlas bitmap. Drawing the time is a blit per character,
+ * tinted with the text color, so the atlas serves every color the clock is
+ * shown in. All digits take up the same width, so a new time in the same
+ * format only needs the changed digits to be redrawn, and the characters
+ * never move.
+ *
+ * The view only asks for a new layout when a text needs more room than it
+ * has. Its size is kept until resetSize(), so the counting down of a clock
+ * never causes layout work.
+ */
+public class ClockView extends View {
+    private static final String GLYPHS = "0123456789:.+";
+    private static final String ANDROID_NS =
+        "http://schemas.android.com/apk/res/android";
+
+    /** The atlas, and where each glyph is in it. */
+    private final Bitmap atlas;
+    private final Rect[] glyphs = new Rect[GLYPHS.length()];
+    private final int lineHeight;
+
+    private final Paint paint = new Paint();
+    private final Rect dst = new Rect();
+
+    /** The text shown, and where each character is drawn. */
+    private final char[] text = new char[TimeFormatter.MAX_LENGTH];
+    private final int[] charX = new int[TimeFormatter.MAX_LENGTH];
+    private final int[] charY = new int[TimeFormatter.MAX_LENGTH];
+    private int length = 0;
+
+    /** The size reserved for the text, without padding. */
+    private int reservedWidth = 0;
+    private int reservedLines = 1;
+
+    /**
+     * The text size is taken from android:textSize, which must refer to a
+     * dimension resource, and defaults to clock_text_size.
+     */
+    public ClockView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+
+        int textSize = attrs == null
+            ? R.dimen.clock_text_size
+            : attrs.getAttributeResourceValue(
+                ANDROID_NS, "textSize", R.dimen.clock_text_size);
+
+        Paint glyphPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        glyphPaint.setTypeface(Typeface.create("sans-serif", Typeface.NORMAL));
+        glyphPaint.setTextSize(getResources().getDimension(textSize));
+        Paint.FontMetrics metrics = glyphPaint.getFontMetrics();
+        lineHeight = (int)Math.ceil(metrics.descent - metrics.ascent);
+
+        // Every digit gets the width of the widest one
+        int digitWidth = 0;
+        for (char c = '0'; c <= '9'; c++) {
+            digitWidth = Math.max(digitWidth, (int)Math.ceil(
+                glyphPaint.measureText(String.valueOf(c))));
+        }
+
+        int[] widths = new int[GLYPHS.length()];
+        int atlasWidth = 0;
+        for (int i = 0; i < GLYPHS.length(); i++) {
+            widths[i] = i < 10 ? digitWidth : (int)Math.ceil(
+                glyphPaint.measureText(GLYPHS.substring(i, i + 1)));
+            atlasWidth += widths[i];
+        }
+
+        atlas = Bitmap.createBitmap(
+            atlasWidth, lineHeight, Bitmap.Config.ALPHA_8);
+        Canvas canvas = new Canvas(atlas);
+        for (int i = 0, x = 0; i < GLYPHS.length(); x += widths[i++]) {
+            String glyph = GLYPHS.substring(i, i + 1);
+            canvas.drawText(
+                glyph, x + (widths[i] - glyphPaint.measureText(glyph)) / 2,
+                -metrics.ascent, glyphPaint);
+            glyphs[i] = new Rect(x, 0, x + widths[i], lineHeight);
+        }
+    }
+
+    public void setTextColor(int color) {
+        paint.setColor(color);
+        invalidate();
+    }
+
+    /**
+     * Show the given text. Only the characters that changed are redrawn,
+     * unless the characters have to move.
+     */
+    public void setText(char[] newText, int start, int newLength) {
+        boolean moved = newLength != length;
+        for (int i = 0; i < newLength && !moved; i++) {
+            moved = width(newText[start + i]) != width(text[i]);
+        }
+
+        if (moved) {
+            System.arraycopy(newText, start, text, 0, newLength);
+            length = newLength;
+            reserve();
+            placeText();
+            invalidate();
+            return;
+        }
+
+        int left = Integer.MAX_VALUE;
+        int top = Integer.MAX_VALUE;
+        int right = Integer.MIN_VALUE;
+        int bottom = Integer.MIN_VALUE;
+        for (int i = 0; i < length; i++) {
+            char c = newText[start + i];
+            if (c != text[i]) {
+                text[i] = c;
+                left = Math.min(left, charX[i]);
+                top = Math.min(top, charY[i]);
+                right = Math.max(right, charX[i] + width(c));
+                bottom = Math.max(bottom, charY[i] + lineHeight);
+            }
+        }
+
+        if (left < right) {
+            invalidate(left, top, right, bottom);
+        }
+    }
+
+    /** Shrink the view to the text shown, for a new game. */
+    public void resetSize() {
+        reservedWidth = 0;
+        reservedLines = 1;
+        reserve();
+        requestLayout();
+    }
+
+    /** Make sure the view has room for the text, or ask for more. */
+    private void reserve() {
+        int lines = 1;
+        int lineWidth = 0;
+        int widest = 0;
+        for (int i = 0; i < length; i++) {
+            if (text[i] == '\n') {
+                lines++;
+                lineWidth = 0;
+            } else {
+                lineWidth += width(text[i]);
+                widest = Math.max(widest, lineWidth);
+            }
+        }
+
+        if (widest > reservedWidth || lines > reservedLines) {
+            reservedWidth = Math.max(reservedWidth, widest);
+            reservedLines = Math.max(reservedLines, lines);
+            requestLayout();
+        }
+    }
+
+    /** Work out where each character goes, centering every line. */
+    private void placeText() {
+        int lines = 1;
+        for (int i = 0; i < length; i++) {
+            if (text[i] == '\n') {
+                lines++;
+            }
+        }
+
+        int contentWidth = getWidth() - getPaddingLeft() - getPaddingRight();
+        int contentHeight = getHeight() - getPaddingTop() - getPaddingBottom();
+        int y = getPaddingTop() + (contentHeight - lines * lineHeight) / 2;
+
+        for (int lineStart = 0; lineStart < length; ) {
+            int lineEnd = lineStart;
+            int lineWidth = 0;
+            while (lineEnd < length && text[lineEnd] != '\n') {
+                lineWidth += width(text[lineEnd++]);
+            }
+
+            int x = getPaddingLeft() + (contentWidth - lineWidth) / 2;
+            for (int i = lineStart; i < lineEnd; i++) {
+                charX[i] = x;
+                charY[i] = y;
+                x += width(text[i]);
+            }
+
+            lineStart = lineEnd + 1;
+            y += lineHeight;
+        }
+    }
+
+    @Override
+    protected void onMeasure(int widthSpec, int heightSpec) {
+        setMeasuredDimension(
+            resolveSize(
+                reservedWidth + getPaddingLeft() + getPaddingRight(),
+                widthSpec),
+            resolveSize(
+                reservedLines * lineHeight + getPaddingTop()
+                    + getPaddingBottom(),
+                heightSpec));
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        placeText();
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        for (int i = 0; i < length; i++) {
+            int glyph = glyph(text[i]);
+            if (glyph >= 0) {
+                Rect src = glyphs[glyph];
+                dst.set(charX[i], charY[i],
+                        charX[i] + src.right - src.left, charY[i] + lineHeight);
+                canvas.drawBitmap(atlas, src, dst, paint);
+            }
+        }
+    }
+
+    /** Return the atlas index of a character, or -1 if it has no glyph. */
+    private static int glyph(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+
+        switch (c) {
+            case ':': return 10;
+            case '.': return 11;
+            case '+': return 12;
+            default: return -1;
+        }
+    }
+
+    /** Return the width of a character, 0 for line breaks. */
+    private int width(char c) {
+        int glyph = glyph(c);
+        return glyph < 0 ? 0 : glyphs[glyph].right - glyphs[glyph].left;
+    }
+}
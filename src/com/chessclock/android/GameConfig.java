@@ -0,0 +1,318 @@
+/*************************************************************************
+ * File: GameConfig.java
+ *
+ * A snapshot of the preferences.
+ *
+ * Created: 2026-10-18
+ *
+ * Author: Simen Heggestøyl
+ *
+ *************************************************************************
+ *
+ *   This file is part of Simple Chess Clock (SCC).
+ *
+ *   SCC is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   SCC is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with SCC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *************************************************************************/
+package com.chessclock.android;
+
+import android.content.SharedPreferences;
+import android.content.SharedPreferences.Editor;
+import android.provider.Settings;
+
+import com.chessclock.core.DelayType;
+import com.chessclock.core.Preset;
+import com.chessclock.core.StandardTimeControl;
+import com.chessclock.core.TimeControl;
+
+/**
+ * An immutable snapshot of the preferences, read in one go. Comparing two
+ * snapshots tells what needs to be reconfigured after the preferences
+ * change: the clocks only need to be reset if the time control changed.
+ */
+public class GameConfig {
+    /** Time unit values */
+    public static final String HOURS = "Hours";
+    public static final String MINUTES = "Minutes";
+    public static final String SECONDS = "Seconds";
+
+    /** Game mode. Changing it needs a new layout, and a new game. */
+    public final boolean bughouse;
+
+    /** Time control */
+    public final DelayType delay;
+    public final String initTimeUnits;
+    public final String delayTimeUnits;
+    public final boolean differentInitTime;
+    public final int initTime1;
+    public final int initTime2;
+    public final int delayTime;
+    public final int periodMoves;
+    public final int periodTime;
+
+    /** The time control above, resolved once. */
+    private final TimeControl timeControl;
+
+    /** Display and feedback */
+    public final String alertTone;
+    public final boolean haptic;
+    public final boolean blackBackground;
+    public final boolean showDeciseconds;
+    public final boolean smoothCountdown;
+    public final boolean latencyOverlay;
+    public final boolean thinkTime;
+
+    /**
+     * Input and background behaviour. Read whenever they're needed, so
+     * changing them needs no reconfiguration.
+     */
+    public final boolean touchDown;
+    public final int touchDebounce;
+    public final boolean keepRunning;
+
+    /** Arbiter broadcast */
+    public final boolean broadcast;
+    public final int board;
+
+    private GameConfig(SharedPreferences prefs) {
+        Editor fixes = prefs.edit();
+
+        bughouse = prefs.getBoolean("prefBughouse", false);
+
+        delay = DelayType.fromPrefValue(
+            prefs.getString("prefDelay", DelayType.NO_DELAY.prefValue));
+        initTimeUnits = prefs.getString("prefInitTimeUnits", MINUTES);
+        delayTimeUnits = prefs.getString("prefDelayTimeUnits", SECONDS);
+        differentInitTime = prefs.getBoolean("prefDifferentInitTime", false);
+        initTime1 = getIntPref(prefs, fixes, "prefInitTime1", 10);
+        initTime2 = getIntPref(prefs, fixes, "prefInitTime2", 10);
+        delayTime = getIntPref(prefs, fixes, "prefDelayTime", 0);
+        periodMoves = getIntPref(prefs, fixes, "prefPeriodMoves", 0);
+        periodTime = getIntPref(prefs, fixes, "prefPeriodTime", 0);
+        timeControl = resolveTimeControl();
+
+        String tone = prefs.getString("prefAlertSound", "");
+        if (tone.equals("")) {
+            tone = Settings.System.DEFAULT_RINGTONE_URI.toString();
+            fixes.putString("prefAlertSound", tone);
+        }
+        alertTone = tone;
+
+        haptic = prefs.getBoolean("prefHaptic", false);
+        blackBackground = prefs.getBoolean("prefBlackBackground", false);
+        showDeciseconds = prefs.getBoolean("prefShowDeciseconds", true);
+        smoothCountdown = prefs.getBoolean("prefSmoothCountdown", false);
+        latencyOverlay = prefs.getBoolean("prefLatencyOverlay", false);
+        thinkTime = prefs.getBoolean("prefThinkTime", false);
+
+        touchDown = prefs.getBoolean("prefTouchDown", false);
+        touchDebounce = getIntPref(prefs, fixes, "prefTouchDebounce", 150);
+        keepRunning = prefs.getBoolean("prefKeepRunning", false);
+
+        broadcast = prefs.getBoolean("prefBroadcast", false);
+        board = getIntPref(prefs, fixes, "prefBoard", 1);
+
+        // Store any fallback values, without blocking on the disk
+        fixes.apply();
+    }
+
+    /**
+     * A copy of the given snapshot with the preset's time control, in
+     * minutes if its times are whole minutes and seconds otherwise.
+     */
+    private GameConfig(GameConfig o, Preset preset) {
+        bughouse = o.bughouse;
+
+        long minute = 60 * 1000;
+        boolean minutes = preset.initTime1 % minute == 0
+            && preset.initTime2 % minute == 0
+            && preset.periodTime % minute == 0;
+        long unit = minutes ? minute : 1000;
+
+        delay = preset.delayType;
+        initTimeUnits = minutes ? MINUTES : SECONDS;
+        delayTimeUnits = SECONDS;
+        differentInitTime = preset.initTime1 != preset.initTime2;
+        initTime1 = (int)(preset.initTime1 / unit);
+        initTime2 = (int)(preset.initTime2 / unit);
+        delayTime = (int)(preset.delay / 1000);
+        periodMoves = preset.periodMoves;
+        periodTime = (int)(preset.periodTime / unit);
+        timeControl = preset.timeControl();
+
+        alertTone = o.alertTone;
+        haptic = o.haptic;
+        blackBackground = o.blackBackground;
+        showDeciseconds = o.showDeciseconds;
+        smoothCountdown = o.smoothCountdown;
+        latencyOverlay = o.latencyOverlay;
+        thinkTime = o.thinkTime;
+
+        touchDown = o.touchDown;
+        touchDebounce = o.touchDebounce;
+        keepRunning = o.keepRunning;
+
+        broadcast = o.broadcast;
+        board = o.board;
+    }
+
+    /** Read a snapshot of the given preferences. */
+    public static GameConfig fromPreferences(SharedPreferences prefs) {
+        return new GameConfig(prefs);
+    }
+
+    /** Return a copy of this snapshot with the preset's time control. */
+    public GameConfig withPreset(Preset preset) {
+        return new GameConfig(this, preset);
+    }
+
+    /** Queue this snapshot's time control to be stored in the preferences. */
+    public void putTimeControl(Editor prefs) {
+        prefs.putString("prefDelay", delay.prefValue);
+        prefs.putString("prefInitTimeUnits", initTimeUnits);
+        prefs.putString("prefDelayTimeUnits", delayTimeUnits);
+        prefs.putBoolean("prefDifferentInitTime", differentInitTime);
+        prefs.putString("prefInitTime1", Integer.toString(initTime1));
+        prefs.putString("prefInitTime2", Integer.toString(initTime2));
+        prefs.putString("prefDelayTime", Integer.toString(delayTime));
+        prefs.putString("prefPeriodMoves", Integer.toString(periodMoves));
+        prefs.putString("prefPeriodTime", Integer.toString(periodTime));
+    }
+
+    /** Return the time control as a preset with the given name. */
+    public Preset toPreset(String name) {
+        return new Preset(
+            name, delay, toMillis(initTime(1), initTimeUnits),
+            toMillis(initTime(2), initTimeUnits),
+            toMillis(delayTime, delayTimeUnits), periodMoves,
+            toMillis(periodTime, initTimeUnits), false);
+    }
+
+    /**
+     * Return a short name for the time control, the same for the same
+     * control whatever the units, such as "90m+30s Fischer, 40: +30m".
+     */
+    public String timeControlName() {
+        StringBuilder name = new StringBuilder();
+        appendTime(name, toMillis(initTime(1), initTimeUnits));
+        if (initTime(2) != initTime(1)) {
+            name.append('/');
+            appendTime(name, toMillis(initTime(2), initTimeUnits));
+        }
+        if (delay != DelayType.NO_DELAY) {
+            name.append('+');
+            appendTime(name, toMillis(delayTime, delayTimeUnits));
+            name.append(' ').append(delay.prefValue);
+        }
+        if (periodMoves > 0) {
+            name.append(", ").append(periodMoves).append(": +");
+            appendTime(name, toMillis(periodTime, initTimeUnits));
+        }
+        return name.toString();
+    }
+
+    private static void appendTime(StringBuilder out, long millis) {
+        if (millis % (60 * 1000) == 0) {
+            out.append(millis / (60 * 1000)).append('m');
+        } else {
+            out.append(millis / 1000).append('s');
+        }
+    }
+
+    /**
+     * Return an integer preference, queueing the fallback to be stored if
+     * the stored value is invalid.
+     */
+    private static int getIntPref(SharedPreferences prefs, Editor fixes,
+                                  String pref, int fallback) {
+        try {
+            return Integer.parseInt(
+                prefs.getString(pref, Integer.toString(fallback))
+            );
+        } catch (Exception ex) {
+            fixes.putString(pref, Integer.toString(fallback));
+            return fallback;
+        }
+    }
+
+    /** Return true if the other snapshot has the same time control. */
+    public boolean sameTimeControl(GameConfig o) {
+        return delay == o.delay
+            && initTimeUnits.equals(o.initTimeUnits)
+            && delayTimeUnits.equals(o.delayTimeUnits)
+            && differentInitTime == o.differentInitTime
+            && initTime1 == o.initTime1
+            && initTime2 == o.initTime2
+            && delayTime == o.delayTime
+            && periodMoves == o.periodMoves
+            && periodTime == o.periodTime;
+    }
+
+    /** Return true if the other snapshot displays the clocks the same. */
+    public boolean sameDisplay(GameConfig o) {
+        return haptic == o.haptic
+            && blackBackground == o.blackBackground
+            && showDeciseconds == o.showDeciseconds
+            && smoothCountdown == o.smoothCountdown
+            && latencyOverlay == o.latencyOverlay
+            && thinkTime == o.thinkTime;
+    }
+
+    /** Return true if the other snapshot broadcasts the clocks the same. */
+    public boolean sameBroadcast(GameConfig o) {
+        return broadcast == o.broadcast && board == o.board;
+    }
+
+    /** Return the init time for a player, in initTimeUnits. */
+    public int initTime(int player) {
+        return differentInitTime
+            ? player == 1 ? initTime1 : initTime2
+            : initTime1;
+    }
+
+    /** Return the time control described by this snapshot. */
+    public TimeControl timeControl() {
+        return timeControl;
+    }
+
+    private TimeControl resolveTimeControl() {
+        StandardTimeControl.Period[] periods = periodMoves > 0
+            ? new StandardTimeControl.Period[] {
+                new StandardTimeControl.Period(
+                    periodMoves, toMillis(periodTime, initTimeUnits))
+              }
+            : new StandardTimeControl.Period[0];
+
+        return new StandardTimeControl(
+            delay,
+            toMillis(initTime(1), initTimeUnits),
+            toMillis(initTime(2), initTimeUnits),
+            toMillis(delayTime, delayTimeUnits),
+            periods
+        );
+    }
+
+    /** Return time in milliseconds based on the specified unit. */
+    public static long toMillis(int time, String timeUnit) {
+        if (timeUnit.equals(HOURS)) {
+            return time * 60L * 60 * 1000;
+        } else if (timeUnit.equals(MINUTES)) {
+            return time * 60L * 1000;
+        } else if (timeUnit.equals(SECONDS)) {
+            return time * 1000L;
+        } else {
+            throw new java.lang.RuntimeException("Invalid timeUnit: " + timeUnit);
+        }
+    }
+}
@@ -0,0 +1,326 @@
+/*************************************************************************
+ * File: GameHistory.java
+ *
+ * The finished and reset games, kept in an SQLite database.
+ *
+ * Created: 2026-10-18
+ *
+ * Author: Simen Heggestøyl
+ *
+ *************************************************************************
+ *
+ *   This file is part of Simple Chess Clock (SCC).
+ *
+ *   SCC is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   SCC is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with SCC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *************************************************************************/
+package com.chessclock.android;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+
+import com.chessclock.core.ClockEngine;
+import com.chessclock.core.MoveLog;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * The finished and reset games, kept in an SQLite database.
+ *
+ * Games are recorded from the UI thread, which only takes a copy of them.
+ * They're written on a background thread, with all games waiting at that
+ * point written in a single transaction.
+ *
+ * The statistics are kept cheap to query however long the history gets:
+ *
+ * - The moves and think time of all games of a time control are summed up
+ *   in the controls table as the games are written. Averaging the time per
+ *   move of every time control only reads that table.
+ *
+ * - Games ended by a flag fall are indexed by when they finished, in a
+ *   partial index holding only those games.
+ *
+ * The queries read the database, so they should be run off the UI thread.
+ */
+public class GameHistory extends SQLiteOpenHelper {
+    public static final String TAG = "History";
+
+    public static final String DATABASE = "history.db";
+    private static final int VERSION = 1;
+
+    private static final long DAY_MILLIS = 24 * 60 * 60 * 1000L;
+    private static final long NANOS_PER_MILLI = 1000000;
+
+    /** How a game ended. */
+    public static final int RESULT_RESET = 0;
+    public static final int RESULT_FLAG_FALL = 1;
+
+    /** A copy of a game, with times in milliseconds. */
+    public static class Game {
+        public final long finished;
+        public final String timeControl;
+        public final int board;
+        public final int result;
+        public final int flagged;
+
+        /** Per move: who made it, how long it took, and their clock after. */
+        public final byte[] players;
+        public final int[] thinkTimes;
+        public final int[] clocks;
+
+        public Game(long finished, String timeControl, int board, int result,
+                    int flagged, byte[] players, int[] thinkTimes,
+                    int[] clocks) {
+            this.finished = finished;
+            this.timeControl = timeControl;
+            this.board = board;
+            this.result = result;
+            this.flagged = flagged;
+            this.players = players;
+            this.thinkTimes = thinkTimes;
+            this.clocks = clocks;
+        }
+
+        /** Copy the game on the given board as it is now. */
+        public static Game of(ClockEngine engine, String timeControl,
+                              int board, long finished) {
+            MoveLog log = engine.moveLog();
+            int moves = log.size();
+            byte[] players = new byte[moves];
+            int[] thinkTimes = new int[moves];
+            int[] clocks = new int[moves];
+            for (int i = 0; i < moves; i++) {
+                players[i] = (byte)log.player(i);
+                thinkTimes[i] = (int)(log.thinkTime(i) / NANOS_PER_MILLI);
+                clocks[i] = (int)(log.clockAfter(i) / NANOS_PER_MILLI);
+            }
+
+            int flagged = engine.outOfTime(1) ? 1
+                : engine.outOfTime(2) ? 2 : 0;
+            return new Game(finished, timeControl, board,
+                            flagged != 0 ? RESULT_FLAG_FALL : RESULT_RESET,
+                            flagged, players, thinkTimes, clocks);
+        }
+
+        public long totalThinkTime() {
+            long total = 0;
+            for (int time : thinkTimes) {
+                total += time;
+            }
+            return total;
+        }
+    }
+
+    private final HandlerThread thread = new HandlerThread(TAG);
+    private final Handler handler;
+
+    /** Games waiting to be written, and whether a write is posted. */
+    private final List<Game> pending = new ArrayList<Game>();
+    private boolean writePosted = false;
+
+    public GameHistory(Context context, String name) {
+        super(context, name, null, VERSION);
+        setWriteAheadLoggingEnabled(true);
+        thread.start();
+        handler = new Handler(thread.getLooper());
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE games ("
+                   + "_id INTEGER PRIMARY KEY, "
+                   + "finished INTEGER NOT NULL, "
+                   + "time_control TEXT NOT NULL, "
+                   + "board INTEGER NOT NULL, "
+                   + "result INTEGER NOT NULL, "
+                   + "flagged INTEGER NOT NULL, "
+                   + "moves INTEGER NOT NULL, "
+                   + "think_ms INTEGER NOT NULL)");
+        db.execSQL("CREATE INDEX games_flagged ON games (finished) "
+                   + "WHERE flagged != 0");
+        db.execSQL("CREATE TABLE moves ("
+                   + "game INTEGER NOT NULL, "
+                   + "move INTEGER NOT NULL, "
+                   + "player INTEGER NOT NULL, "
+                   + "think_ms INTEGER NOT NULL, "
+                   + "clock_ms INTEGER NOT NULL, "
+                   + "PRIMARY KEY (game, move)) WITHOUT ROWID");
+        db.execSQL("CREATE TABLE controls ("
+                   + "time_control TEXT PRIMARY KEY, "
+                   + "games INTEGER NOT NULL, "
+                   + "moves INTEGER NOT NULL, "
+                   + "think_ms INTEGER NOT NULL)");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // There's only the one version so far
+    }
+
+    /** Queue a game to be written. */
+    public void record(Game game) {
+        synchronized (pending) {
+            pending.add(game);
+            if (writePosted) {
+                return;
+            }
+            writePosted = true;
+        }
+        handler.post(write);
+    }
+
+    /** Writes all waiting games in one transaction. */
+    private final Runnable write = new Runnable() {
+        public void run() {
+            List<Game> games;
+            synchronized (pending) {
+                games = new ArrayList<Game>(pending);
+                pending.clear();
+                writePosted = false;
+            }
+
+            try {
+                write(getWritableDatabase(), games);
+            } catch (RuntimeException ex) {
+                // SQLiteException and friends
+                Log.e(TAG, "Couldn't write " + games.size() + " games", ex);
+            }
+        }
+    };
+
+    private static void write(SQLiteDatabase db, List<Game> games) {
+        SQLiteStatement insertGame = db.compileStatement(
+            "INSERT INTO games (finished, time_control, board, result, "
+            + "flagged, moves, think_ms) VALUES (?, ?, ?, ?, ?, ?, ?)");
+        SQLiteStatement insertMove = db.compileStatement(
+            "INSERT INTO moves (game, move, player, think_ms, clock_ms) "
+            + "VALUES (?, ?, ?, ?, ?)");
+        SQLiteStatement updateControl = db.compileStatement(
+            "UPDATE controls SET games = games + 1, moves = moves + ?, "
+            + "think_ms = think_ms + ? WHERE time_control = ?");
+        SQLiteStatement insertControl = db.compileStatement(
+            "INSERT INTO controls (time_control, games, moves, think_ms) "
+            + "VALUES (?, 1, ?, ?)");
+
+        db.beginTransaction();
+        try {
+            for (Game game : games) {
+                int moves = game.thinkTimes.length;
+                long thinkTime = game.totalThinkTime();
+
+                insertGame.bindLong(1, game.finished);
+                insertGame.bindString(2, game.timeControl);
+                insertGame.bindLong(3, game.board);
+                insertGame.bindLong(4, game.result);
+                insertGame.bindLong(5, game.flagged);
+                insertGame.bindLong(6, moves);
+                insertGame.bindLong(7, thinkTime);
+                long id = insertGame.executeInsert();
+
+                insertMove.bindLong(1, id);
+                for (int i = 0; i < moves; i++) {
+                    insertMove.bindLong(2, i + 1);
+                    insertMove.bindLong(3, game.players[i]);
+                    insertMove.bindLong(4, game.thinkTimes[i]);
+                    insertMove.bindLong(5, game.clocks[i]);
+                    insertMove.executeInsert();
+                }
+
+                updateControl.bindLong(1, moves);
+                updateControl.bindLong(2, thinkTime);
+                updateControl.bindString(3, game.timeControl);
+                if (updateControl.executeUpdateDelete() == 0) {
+                    insertControl.bindString(1, game.timeControl);
+                    insertControl.bindLong(2, moves);
+                    insertControl.bindLong(3, thinkTime);
+                    insertControl.executeInsert();
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            insertGame.close();
+            insertMove.close();
+            updateControl.close();
+            insertControl.close();
+        }
+    }
+
+    /**
+     * Wait until the games recorded so far are written. Not to be called
+     * from the UI thread.
+     */
+    public void flush() throws InterruptedException {
+        final CountDownLatch written = new CountDownLatch(1);
+        handler.post(new Runnable() {
+            public void run() {
+                written.countDown();
+            }
+        });
+        written.await();
+    }
+
+    /**
+     * Return the average time per move of each time control played, in
+     * milliseconds, by time control.
+     */
+    public Map<String, Long> averageMoveTimes() {
+        Map<String, Long> averages = new LinkedHashMap<String, Long>();
+        Cursor c = getReadableDatabase().rawQuery(
+            "SELECT time_control, think_ms / moves FROM controls "
+            + "WHERE moves > 0 ORDER BY time_control", null);
+        try {
+            while (c.moveToNext()) {
+                averages.put(c.getString(0), c.getLong(1));
+            }
+        } finally {
+            c.close();
+        }
+        return averages;
+    }
+
+    /** Return the number of games ended by a flag fall in the last days. */
+    public int flaggedGames(int days) {
+        long since = System.currentTimeMillis() - days * DAY_MILLIS;
+        Cursor c = getReadableDatabase().rawQuery(
+            "SELECT COUNT(*) FROM games WHERE flagged != 0 AND finished >= ?",
+            new String[] { Long.toString(since) });
+        try {
+            return c.moveToNext() ? c.getInt(0) : 0;
+        } finally {
+            c.close();
+        }
+    }
+
+    /** Write any waiting games, then close the database. */
+    @Override
+    public void close() {
+        handler.post(new Runnable() {
+            public void run() {
+                GameHistory.super.close();
+                thread.quit();
+            }
+        });
+    }
+}
@@ -0,0 +1,152 @@
+/*************************************************************************
+ * File: HistoryBenchmark.java
+ *
+ * Measures the game history database on a device.
+ *
+ * Created: 2026-10-18
+ *
+ * Author: Simen Heggestøyl
+ *
+ *************************************************************************
+ *
+ *   This file is part of Simple Chess Clock (SCC).
+ *
+ *   SCC is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   SCC is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with SCC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *************************************************************************/
+package com.chessclock.android;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Measures the game history on a device: fills a database of its own with
+ * generated games, then times the statistics queries on it. Started by
+ * launching the app with an extra, see "make history". The results are
+ * logged under GameHistory.TAG.
+ */
+public class HistoryBenchmark implements Runnable {
+    /** The number of games to generate, as an int extra. */
+    public static final String EXTRA_GAMES = "historyBenchmark";
+
+    private static final String DATABASE = "history-benchmark.db";
+    private static final int QUERY_RUNS = 50;
+    private static final long DAY_MILLIS = 24 * 60 * 60 * 1000L;
+
+    private static final String[] TIME_CONTROLS = {
+        "1m", "3m+2s Fischer", "5m+3s Bronstein", "5m/4m", "15m+10s Fischer",
+        "90m+5s Bronstein", "90m+30s Fischer, 40: +30m", "120m, 40: +60m"
+    };
+
+    private final Context context;
+    private final int games;
+    private final Random random = new Random(1);
+
+    private HistoryBenchmark(Context context, int games) {
+        this.context = context;
+        this.games = games;
+    }
+
+    /** Run the benchmark with the given number of games, in the background. */
+    public static void start(Context context, int games) {
+        new Thread(new HistoryBenchmark(context, games), "HistoryBenchmark")
+            .start();
+    }
+
+    public void run() {
+        context.deleteDatabase(DATABASE);
+        GameHistory history = new GameHistory(context, DATABASE);
+        try {
+            fill(history);
+            time(history);
+        } catch (InterruptedException ex) {
+            Log.e(GameHistory.TAG, "Benchmark interrupted", ex);
+        } finally {
+            history.close();
+        }
+        context.deleteDatabase(DATABASE);
+        Log.i(GameHistory.TAG, "Benchmark finished");
+    }
+
+    /** Write the games, spread over the last year, and log how long it took. */
+    private void fill(GameHistory history) throws InterruptedException {
+        long now = System.currentTimeMillis();
+        long moves = 0;
+        long start = SystemClock.elapsedRealtimeNanos();
+
+        for (int i = 0; i < games; i++) {
+            int n = 20 + random.nextInt(100);
+            byte[] players = new byte[n];
+            int[] thinkTimes = new int[n];
+            int[] clocks = new int[n];
+            int[] left = { 0, 600000, 600000 };
+            for (int move = 0; move < n; move++) {
+                int player = move % 2 + 1;
+                players[move] = (byte)player;
+                thinkTimes[move] = 500 + random.nextInt(20000);
+                left[player] = Math.max(0, left[player] - thinkTimes[move]);
+                clocks[move] = left[player];
+            }
+            moves += n;
+
+            int flagged = random.nextInt(5) == 0 ? players[n - 1] : 0;
+            history.record(new GameHistory.Game(
+                now - (long)(random.nextDouble() * 365 * DAY_MILLIS),
+                TIME_CONTROLS[random.nextInt(TIME_CONTROLS.length)], 0,
+                flagged != 0
+                    ? GameHistory.RESULT_FLAG_FALL : GameHistory.RESULT_RESET,
+                flagged, players, thinkTimes, clocks));
+        }
+        history.flush();
+
+        long elapsed = SystemClock.elapsedRealtimeNanos() - start;
+        Log.i(GameHistory.TAG, games + " games, " + moves + " moves written in "
+              + elapsed / 1000000 + " ms ("
+              + elapsed / 1000 / Math.max(1, games) + " us per game)");
+    }
+
+    /** Time each query, logging the median and worst time. */
+    private void time(GameHistory history) {
+        long[] averages = new long[QUERY_RUNS];
+        long[] flagged = new long[QUERY_RUNS];
+        int count = 0;
+
+        for (int run = 0; run < QUERY_RUNS; run++) {
+            long start = SystemClock.elapsedRealtimeNanos();
+            history.averageMoveTimes();
+            long middle = SystemClock.elapsedRealtimeNanos();
+            count = history.flaggedGames(7);
+            long end = SystemClock.elapsedRealtimeNanos();
+            averages[run] = middle - start;
+            flagged[run] = end - middle;
+        }
+
+        Log.i(GameHistory.TAG, "Average time per move by time control: "
+              + history.averageMoveTimes());
+        log("averageMoveTimes()", averages);
+        Log.i(GameHistory.TAG, "Games flagged in the last 7 days: " + count);
+        log("flaggedGames(7)", flagged);
+    }
+
+    private static void log(String query, long[] times) {
+        Arrays.sort(times);
+        Log.i(GameHistory.TAG, query + ": median "
+              + times[times.length / 2] / 1000 + " us, worst "
+              + times[times.length - 1] / 1000 + " us");
+    }
+}
@@ -0,0 +1,165 @@
+/*************************************************************************
+ * File: LatencyMonitor.java
+ *
+ * Measures clock refresh and press latencies, and shows them on request.
+ *
+ * Created: 2026-10-18
+ *
+ * Author: Simen Heggestøyl
+ *
+ *************************************************************************
+ *
+ *   This file is part of Simple Chess Clock (SCC).
+ *
+ *   SCC is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   SCC is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with SCC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *************************************************************************/
+package com.chessclock.android;
+
+import android.content.Context;
+import android.util.Log;
+import android.view.View;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import com.chessclock.core.LatencyHistogram;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Measures how responsive the clocks are on this device:
+ *   - how late clock refreshes run compared to when they were due,
+ *   - how long the main thread spends in each refresh, and
+ *   - how long it takes from a touch until the opponent's clock is running.
+ *
+ * Recording goes into fixed histograms and doesn't allocate, so it's always
+ * on. The numbers can be shown in an overlay, and a long press on the
+ * overlay exports the histograms to a CSV file for comparing devices.
+ */
+public class LatencyMonitor {
+    private static final String TAG = "LatencyMonitor";
+    private static final long NANOS_PER_MILLI = 1000000;
+
+    private final LatencyHistogram tickLateness = new LatencyHistogram();
+    private final LatencyHistogram tickTime = new LatencyHistogram();
+    private final LatencyHistogram touchToSwitch = new LatencyHistogram();
+
+    private final TextView overlay;
+    private final StringBuilder text = new StringBuilder();
+
+    public LatencyMonitor(TextView overlay) {
+        this.overlay = overlay;
+        overlay.setOnLongClickListener(new View.OnLongClickListener() {
+            public boolean onLongClick(View v) {
+                export(v.getContext());
+                return true;
+            }
+        });
+    }
+
+    public void recordTickLateness(long nanos) {
+        tickLateness.record(nanos);
+    }
+
+    public void recordTickTime(long nanos) {
+        tickTime.record(nanos);
+    }
+
+    public void recordTouchToSwitch(long nanos) {
+        touchToSwitch.record(nanos);
+    }
+
+    public void setVisible(boolean visible) {
+        overlay.setVisibility(visible ? View.VISIBLE : View.GONE);
+        refresh();
+    }
+
+    /** Show the latest numbers in the overlay, if it's visible. */
+    public void refresh() {
+        if (overlay.getVisibility() != View.VISIBLE) {
+            return;
+        }
+
+        text.setLength(0);
+        summarize("late", tickLateness);
+        text.append('\n');
+        summarize("tick", tickTime);
+        text.append('\n');
+        summarize("press", touchToSwitch);
+        overlay.setText(text);
+    }
+
+    /** Append "name p50 p99 max" of a histogram, in milliseconds. */
+    private void summarize(String name, LatencyHistogram histogram) {
+        text.append(name).append(' ');
+        appendMillis(histogram.percentile(50));
+        text.append(' ');
+        appendMillis(histogram.percentile(99));
+        text.append(' ');
+        appendMillis(histogram.max());
+    }
+
+    /** Append a time in milliseconds, with two decimals. */
+    private void appendMillis(long nanos) {
+        long hundredths = (nanos + NANOS_PER_MILLI / 200) / (NANOS_PER_MILLI / 100);
+        text.append(hundredths / 100).append('.');
+        text.append((char)('0' + hundredths / 10 % 10));
+        text.append((char)('0' + hundredths % 10));
+    }
+
+    /**
+     * Write all histograms to a CSV file in the app's external files
+     * directory. The file is written on a background thread.
+     */
+    private void export(final Context context) {
+        File dir = context.getExternalFilesDir(null);
+        if (dir == null) {
+            Toast.makeText(context, R.string.toast_export_failed,
+                           Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        final File file = new File(
+            dir, "latency-" + System.currentTimeMillis() + ".csv");
+        final StringBuilder csv = new StringBuilder();
+        try {
+            csv.append("histogram,lowest_ns,highest_ns,count\n");
+            tickLateness.writeCsv(csv, "tick_lateness");
+            tickTime.writeCsv(csv, "tick_time");
+            touchToSwitch.writeCsv(csv, "touch_to_switch");
+        } catch (IOException ex) {
+            // Not thrown by a StringBuilder
+        }
+
+        new Thread(new Runnable() {
+            public void run() {
+                try {
+                    Writer out = new FileWriter(file);
+                    try {
+                        out.write(csv.toString());
+                    } finally {
+                        out.close();
+                    }
+                } catch (IOException ex) {
+                    Log.e(TAG, "Couldn't export latencies", ex);
+                }
+            }
+        }).start();
+
+        Toast.makeText(context, file.getPath(), Toast.LENGTH_LONG).show();
+    }
+}
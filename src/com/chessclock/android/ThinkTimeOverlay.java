@@ -0,0 +1,165 @@
+/*************************************************************************
+ * File: ThinkTimeOverlay.java
+ *
+ * Shows each player's think time statistics.
+ *
+ * Created: 2026-10-18
+ *
+ * Author: Simen Heggestøyl
+ *
+ *************************************************************************
+ *
+ *   This file is part of Simple Chess Clock (SCC).
+ *
+ *   SCC is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   SCC is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with SCC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *************************************************************************/
+package com.chessclock.android;
+
+import android.content.Context;
+import android.util.Log;
+import android.view.View;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import com.chessclock.core.ClockEngine;
+import com.chessclock.core.MoveLog;
+import com.chessclock.core.ThinkTimeStats;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Shows each player's think time statistics in an overlay, one line per
+ * clock: the number of moves, and the mean, standard deviation, longest
+ * and 90th percentile think time, in seconds.
+ *
+ * The statistics are kept up to date by the move logs as moves are made
+ * (see ThinkTimeStats), and only read here, after every press and when a
+ * game is set up or restored. Refreshing reuses one buffer for the text.
+ *
+ * A long press on the overlay exports the move log of each board, as PGN
+ * clock comments to merge with the game's moves and as CSV.
+ */
+public class ThinkTimeOverlay {
+    private static final String TAG = "ThinkTimeOverlay";
+    private static final long NANOS_PER_TENTH = 100000000;
+
+    private final TextView overlay;
+    private final ClockEngine[] engines;
+    private final StringBuilder text = new StringBuilder();
+
+    public ThinkTimeOverlay(TextView overlay, ClockEngine[] engines) {
+        this.overlay = overlay;
+        this.engines = engines;
+        overlay.setOnLongClickListener(new View.OnLongClickListener() {
+            public boolean onLongClick(View v) {
+                export(v.getContext());
+                return true;
+            }
+        });
+    }
+
+    public void setVisible(boolean visible) {
+        overlay.setVisibility(visible ? View.VISIBLE : View.GONE);
+        refresh();
+    }
+
+    /** Show the latest statistics, if the overlay is visible. */
+    public void refresh() {
+        if (overlay.getVisibility() != View.VISIBLE) {
+            return;
+        }
+
+        text.setLength(0);
+        for (int board = 0; board < engines.length; board++) {
+            ThinkTimeStats stats = engines[board].moveLog().stats();
+            for (int player = 1; player <= 2; player++) {
+                if (text.length() > 0) {
+                    text.append('\n');
+                }
+                text.append(board * 2 + player).append(": n ");
+                text.append(stats.count(player)).append(" avg ");
+                appendSeconds(stats.mean(player));
+                text.append(" sd ");
+                appendSeconds(stats.standardDeviation(player));
+                text.append(" max ");
+                appendSeconds(stats.longest(player));
+                text.append(" p90 ");
+                appendSeconds(stats.percentile90(player));
+            }
+        }
+        overlay.setText(text);
+    }
+
+    /**
+     * Write the move log of each board to a PGN and a CSV file in the app's
+     * external files directory. The files are written on a background
+     * thread.
+     */
+    private void export(final Context context) {
+        File dir = context.getExternalFilesDir(null);
+        if (dir == null) {
+            Toast.makeText(context, R.string.toast_export_failed,
+                           Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        String name = "moves-" + System.currentTimeMillis();
+        final File[] files = new File[engines.length * 2];
+        final StringBuilder[] texts = new StringBuilder[files.length];
+        for (int board = 0; board < engines.length; board++) {
+            String boardName = board == 0 ? name : name + "-" + (board + 1);
+            MoveLog log = engines[board].moveLog();
+            files[board * 2] = new File(dir, boardName + ".pgn");
+            files[board * 2 + 1] = new File(dir, boardName + ".csv");
+            texts[board * 2] = new StringBuilder();
+            texts[board * 2 + 1] = new StringBuilder();
+            try {
+                log.writePgn(texts[board * 2]);
+                log.writeCsv(texts[board * 2 + 1]);
+            } catch (IOException ex) {
+                // Not thrown by a StringBuilder
+            }
+        }
+
+        new Thread(new Runnable() {
+            public void run() {
+                for (int i = 0; i < files.length; i++) {
+                    try {
+                        Writer out = new FileWriter(files[i]);
+                        try {
+                            out.write(texts[i].toString());
+                        } finally {
+                            out.close();
+                        }
+                    } catch (IOException ex) {
+                        Log.e(TAG, "Couldn't export the moves", ex);
+                    }
+                }
+            }
+        }).start();
+
+        Toast.makeText(context, new File(dir, name).getPath() + ".pgn/.csv",
+                       Toast.LENGTH_LONG).show();
+    }
+
+    /** Append a time in seconds, with one decimal. */
+    private void appendSeconds(long nanos) {
+        long tenths = (nanos + NANOS_PER_TENTH / 2) / NANOS_PER_TENTH;
+        text.append(tenths / 10).append('.').append((char)('0' + tenths % 10));
+    }
+}